@@ -17,6 +17,7 @@ import gameboy.emulator.debug.DebugScreenBackground;
 import gameboy.emulator.debug.DebugScreenOAM;
 import gameboy.emulator.debug.DebugScreenObject;
 import gameboy.emulator.interaction.Controller;
+import gameboy.emulator.link.LinkPort;
 import gameboy.emulator.memory.AddressMap;
 import gameboy.emulator.processor.DMAProcessor;
 import gameboy.emulator.processor.Processor;
@@ -47,6 +48,12 @@ public class GameBoy {
     JFrame frame;
 
     Processor processor;
+    SerialProcessor serialProcessor;
+    Screen screen;
+    Speaker speaker;
+
+    int displayScale = Display.DEFAULT_SCALE;
+    boolean isAudioEnabled = true;
 
     // Load a bios into the Game Boy.
     public void loadBIOS(BIOS bios) {
@@ -58,6 +65,16 @@ public class GameBoy {
         this.cartridge = cartridge;
     }
 
+    // Set how many times larger than the Game Boy's resolution the displays are. This must be done before initializing.
+    public void setDisplayScale(int displayScale) {
+        this.displayScale = displayScale;
+    }
+
+    // Set whether sound is produced and played. Games behave the same either way. This must be done before initializing.
+    public void setAudioEnabled(boolean isAudioEnabled) {
+        this.isAudioEnabled = isAudioEnabled;
+    }
+
     public void initialize() {
         if(bios == null) {
             throw new IllegalStateException("Game Boy cannot power on with a null BIOS.");
@@ -79,6 +96,11 @@ public class GameBoy {
         addComponents();
         //addLogging(); // Uncomment to add logging - NOTE: This drastically slows performance down.
         //addDebugDisplay(); // Uncomment to also display debug screens (complete tile maps, OAM viewer, etc...)
+        //setFrameSkip(1); // Uncomment to only draw every other frame.
+        //setAdaptiveFrameSkip(true); // Uncomment to skip drawing frames while emulation is behind schedule.
+        //setSpeedMultiplier(2.0); // Uncomment to run at a different speed. Sound is muted unless running at normal speed.
+        //setUnthrottled(true); // Uncomment to run as fast as possible.
+        //setAudioPacing(true); // Uncomment to pace emulation by the sound card instead of the system clock.
     }
 
     public void addComponents() {
@@ -89,7 +111,7 @@ public class GameBoy {
         DMAProcessor dmaProcessor = new DMAProcessor(addressMap);
         dmaProcessor.attachClock(hybridClock);
 
-        SerialProcessor serialProcessor = new SerialProcessor(addressMap);
+        serialProcessor = new SerialProcessor(addressMap);
         serialProcessor.attachClock(hybridClock);
 
         DIVTimer divTimer = new DIVTimer(addressMap);
@@ -101,10 +123,12 @@ public class GameBoy {
         Controller controller = new Controller(addressMap);
         controller.attachClock(hybridClock);
 
-        Screen screen = new Screen(addressMap);
+        screen = new Screen(addressMap);
         screen.attachClock(hybridClock);
+        screen.attachDMAProcessor(dmaProcessor);
 
         Mixer mixer = new Mixer(addressMap);
+        mixer.setAudioEnabled(isAudioEnabled);
         mixer.attachClock(hybridClock);
         mixer.attachDIVAPUTimer(divapuTimer);
 
@@ -112,11 +136,13 @@ public class GameBoy {
         Input input = new Input(controller);
         frame.addKeyListener(input);
         
-        Display display = new Display(screen, frame);
+        Display display = new Display(screen, frame, displayScale);
         display.attachClock(hybridClock);
         
-        Speaker speaker = new Speaker(mixer, timingInfo, 44100);
-        speaker.attachClock(hybridClock);
+        if(isAudioEnabled) {
+            speaker = new Speaker(mixer, timingInfo, 44100);
+            speaker.attachClock(hybridClock);
+        }
     }
 
     public void addLogging() {
@@ -128,34 +154,57 @@ public class GameBoy {
         DebugScreenTileData debugScreenTileData = new DebugScreenTileData(addressMap);
         debugScreenTileData.attachClock(hybridClock);
         JFrame debugFrameTileData = createJFrame("Tile Data");
-        Display debugDisplayTileData = new Display(debugScreenTileData, debugFrameTileData);
+        Display debugDisplayTileData = new Display(debugScreenTileData, debugFrameTileData, displayScale);
         debugDisplayTileData.attachClock(hybridClock);
 
         DebugScreenBackground debugScreenBackground = new DebugScreenBackground(addressMap);
         debugScreenBackground.attachClock(hybridClock);
         JFrame debugFrameBackground = createJFrame("Background");
-        Display debugDisplayBackground = new Display(debugScreenBackground, debugFrameBackground);
+        Display debugDisplayBackground = new Display(debugScreenBackground, debugFrameBackground, displayScale);
         debugDisplayBackground.attachClock(hybridClock);
 
         DebugScreenWindow debugScreenWindow = new DebugScreenWindow(addressMap);
         debugScreenWindow.attachClock(hybridClock);
         JFrame debugFrameWindow = createJFrame("Window");
-        Display debugDisplayWindow = new Display(debugScreenWindow, debugFrameWindow);
+        Display debugDisplayWindow = new Display(debugScreenWindow, debugFrameWindow, displayScale);
         debugDisplayWindow.attachClock(hybridClock);
 
         DebugScreenObject debugScreenObject = new DebugScreenObject(addressMap);
         debugScreenObject.attachClock(hybridClock);
         JFrame debugFrameObject = createJFrame("Object");
-        Display debugDisplayObject = new Display(debugScreenObject, debugFrameObject);
+        Display debugDisplayObject = new Display(debugScreenObject, debugFrameObject, displayScale);
         debugDisplayObject.attachClock(hybridClock);
 
         DebugScreenOAM debugScreenOAM = new DebugScreenOAM(addressMap);
         debugScreenOAM.attachClock(hybridClock);
         JFrame debugFrameOAM = createJFrame("OAM");
-        Display debugDisplayOAM = new Display(debugScreenOAM, debugFrameOAM);
+        Display debugDisplayOAM = new Display(debugScreenOAM, debugFrameOAM, displayScale);
         debugDisplayOAM.attachClock(hybridClock);
     }
 
+    public void setFrameSkip(int frameSkip) {
+        // Skipped frames still run with exact timing, but nothing is drawn for them.
+        screen.setFrameSkip(frameSkip);
+    }
+
+    public void setAdaptiveFrameSkip(boolean isAdaptiveFrameSkip) {
+        screen.setAdaptiveFrameSkip(isAdaptiveFrameSkip);
+    }
+
+    // These can be changed while the Game Boy is running.
+    public void setSpeedMultiplier(double speedMultiplier) {
+        hybridClock.setSpeedMultiplier(speedMultiplier);
+    }
+
+    public void setUnthrottled(boolean isUnthrottled) {
+        hybridClock.setUnthrottled(isUnthrottled);
+    }
+
+    public void setAudioPacing(boolean isAudioPacing) {
+        // Without a speaker, there is nothing to pace by.
+        hybridClock.setPacingSource(isAudioPacing && speaker != null ? speaker.pacingSource : null);
+    }
+
     public JFrame createMainJFrame(String title) {
         // Creates a JFrame that will stop the emulator when closed.
         JFrame frame = createJFrame(title);
@@ -179,6 +228,12 @@ public class GameBoy {
         return frame;
     }
 
+    // Connect a link cable to another Game Boy, either in this process with a LinkCable or in another one with a SocketLinkPort.
+    // This must be done after initializing and before powering on. Until the other Game Boy is running too, this one behaves as if nothing were plugged in.
+    public void connectLinkCable(LinkPort linkPort) {
+        serialProcessor.connect(linkPort);
+    }
+
     // Turn on the Game Boy.
     public void powerOn() {
         hybridClock.start();
@@ -188,6 +243,10 @@ public class GameBoy {
     // Turn off the Game Boy.
     public void powerOff() {
         hybridClock.stop();
+        serialProcessor.disconnect();
+        if(speaker != null) {
+            speaker.stop();
+        }
 
         closeableResourceManager.closeAll();
         frameManager.disposeAll();
@@ -1,8 +1,11 @@
 package gameboy.data;
 
-// Image data is made up of points on the screen (x, y, colorIndex).
+// Image data is made up of a frame buffer with one colorIndex per point on the screen, stored row by row.
+// Consumers may read the frame buffer as each line is completed or once the whole frame is completed, but should not keep a reference to it.
+// When a frame is not changed, the frame buffer holds exactly the same image as the previous frame.
 public interface ImageConsumer {
-    abstract public void consumeImage(int x, int y, int colorIndex);
+    abstract public void consumeLine(int y, byte[] frameBuffer);
+    abstract public void consumeFrame(byte[] frameBuffer, boolean isChanged);
     abstract public void consumeDebugImage(int[][] imageData);
 
     default public void addToImageProducer(ImageProducer imageProducer) {
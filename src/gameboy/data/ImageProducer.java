@@ -1,13 +1,19 @@
 package gameboy.data;
 
-// Image data is made up of points on the screen (x, y, colorIndex).
+// Image data is made up of a frame buffer with one colorIndex per point on the screen, stored row by row.
 public interface ImageProducer {
     abstract public ImageConsumer[] getImageConsumers();
     abstract public void addImageConsumer(ImageConsumer imageConsumer);
 
-    default public void produceImage(int x, int y, int colorIndex) {
+    default public void produceLine(int y, byte[] frameBuffer) {
         for(ImageConsumer imageConsumer : getImageConsumers()) {
-            imageConsumer.consumeImage(x, y, colorIndex);
+            imageConsumer.consumeLine(y, frameBuffer);
+        }
+    }
+
+    default public void produceFrame(byte[] frameBuffer, boolean isChanged) {
+        for(ImageConsumer imageConsumer : getImageConsumers()) {
+            imageConsumer.consumeFrame(frameBuffer, isChanged);
         }
     }
 
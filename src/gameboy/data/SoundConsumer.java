@@ -1,8 +1,9 @@
 package gameboy.data;
 
-// Sound data is made up of 4-byte int samples, 2 bytes for the left channel and 2 bytes for the right channel.
+// Sound data is made up of blocks of 16-bit samples, interleaved as a left channel sample and then a right channel sample for each frame.
+// Consumers may read the block until they return, but should not keep a reference to it.
 public interface SoundConsumer {
-    abstract public void consumeSound(int data);
+    abstract public void consumeSamples(short[] samples, int frames, int sampleRate);
 
     default public void addToSoundProducer(SoundProducer soundProducer) {
         soundProducer.addSoundConsumer(this);
@@ -1,13 +1,13 @@
 package gameboy.data;
 
-// Sound data is made up of 4-byte int samples, 2 bytes for the left channel and 2 bytes for the right channel.
+// Sound data is made up of blocks of 16-bit samples, interleaved as a left channel sample and then a right channel sample for each frame.
 public interface SoundProducer {
     abstract public SoundConsumer[] getSoundConsumers();
     abstract public void addSoundConsumer(SoundConsumer soundConsumer);
 
-    default public void produceSound(int data) {
+    default public void produceSamples(short[] samples, int frames, int sampleRate) {
         for(SoundConsumer soundConsumer : getSoundConsumers()) {
-            soundConsumer.consumeSound(data);
+            soundConsumer.consumeSamples(samples, frames, sampleRate);
         }
     }
 }
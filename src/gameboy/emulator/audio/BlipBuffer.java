@@ -0,0 +1,114 @@
+package gameboy.emulator.audio;
+
+// Synthesizes output samples directly from amplitude changes ("deltas") using band-limited steps.
+// Instead of computing the signal at the APU rate and throwing most of it away, each change in amplitude adds a band-limited step to the output.
+// This avoids aliasing and only costs work for each amplitude change and each output sample.
+public class BlipBuffer {
+    // Each step is placed with a precision of 1/PHASE_COUNT of an output sample.
+    public final static int PHASE_COUNT = 32;
+
+    // Each step is spread over this many output samples.
+    public final static int KERNEL_WIDTH = 16;
+
+    // The kernel values for each phase add up to exactly 1 << KERNEL_BITS so that the final amplitude is exact.
+    public final static int KERNEL_BITS = 12;
+
+    // Cutoff frequency as a fraction of the output Nyquist frequency.
+    public final static double CUTOFF = 0.9;
+
+    public final static int[][] kernel = createKernel();
+
+    double samplesPerClock;
+
+    // Position of the start of the current frame in output samples, relative to the first sample that has not been read.
+    double offset = 0;
+    int availableSamples = 0;
+
+    // Holds the kernel contributions of each delta. Output samples are the running sum of these values.
+    int[] buffer;
+    int integrator = 0;
+
+    public BlipBuffer(int maxSamplesPerFrame) {
+        buffer = new int[maxSamplesPerFrame + KERNEL_WIDTH + 1];
+    }
+
+    public void setRate(double clockRate, double sampleRate) {
+        // Only change the rate at the end of a frame.
+        samplesPerClock = sampleRate / clockRate;
+    }
+
+    public void addDelta(int clockTime, int delta) {
+        // clockTime is relative to the start of the current frame.
+        double position = offset + (clockTime * samplesPerClock);
+        int wholePosition = (int)position;
+        int phase = (int)((position - wholePosition) * PHASE_COUNT);
+
+        int[] phaseKernel = kernel[phase];
+        for(int i = 0; i < KERNEL_WIDTH; i++) {
+            buffer[wholePosition + i] += phaseKernel[i] * delta;
+        }
+    }
+
+    public void endFrame(int clockDuration) {
+        // Any sample before the end of this frame can no longer be affected by future deltas, so it is ready to be read.
+        offset += clockDuration * samplesPerClock;
+        availableSamples = (int)offset;
+    }
+
+    public int getAvailableSamples() {
+        return availableSamples;
+    }
+
+    public void readSamples(short[] samples, int start, int stride, int count) {
+        // Read count samples, which must not be more than are available.
+        // They are written stride elements apart beginning at start, so that the left and right channels can be interleaved in the same array.
+        for(int i = 0; i < count; i++) {
+            integrator += buffer[i];
+
+            int sample = integrator >> KERNEL_BITS;
+            samples[start + (i * stride)] = (short)Math.max(Short.MIN_VALUE, Math.min(sample, Short.MAX_VALUE));
+        }
+
+        // Shift the remaining contributions down to the start of the buffer.
+        int remaining = (int)offset - count + KERNEL_WIDTH;
+        System.arraycopy(buffer, count, buffer, 0, remaining);
+        for(int i = remaining; i < remaining + count; i++) {
+            buffer[i] = 0;
+        }
+
+        offset -= count;
+        availableSamples -= count;
+    }
+
+    public static int[][] createKernel() {
+        // Each phase holds a windowed sinc impulse, delayed by the phase's fraction of a sample and centered in the kernel.
+        int[][] kernel = new int[PHASE_COUNT][KERNEL_WIDTH];
+        int center = KERNEL_WIDTH / 2;
+
+        for(int phase = 0; phase < PHASE_COUNT; phase++) {
+            double[] impulse = new double[KERNEL_WIDTH];
+            double sum = 0;
+            for(int i = 0; i < KERNEL_WIDTH; i++) {
+                double x = i - center - ((double)phase / PHASE_COUNT);
+                double sinc = x == 0 ? 1.0 : Math.sin(Math.PI * CUTOFF * x) / (Math.PI * CUTOFF * x);
+
+                // Blackman window over the width of the kernel.
+                double w = (x + center + 1) / (KERNEL_WIDTH + 1);
+                double window = 0.42 - (0.5 * Math.cos(2 * Math.PI * w)) + (0.08 * Math.cos(4 * Math.PI * w));
+
+                impulse[i] = sinc * window;
+                sum += impulse[i];
+            }
+
+            // Normalize and round, then put any rounding error in the center so that each phase adds up exactly.
+            int total = 0;
+            for(int i = 0; i < KERNEL_WIDTH; i++) {
+                kernel[phase][i] = (int)Math.round(impulse[i] / sum * (1 << KERNEL_BITS));
+                total += kernel[phase][i];
+            }
+            kernel[phase][center] += (1 << KERNEL_BITS) - total;
+        }
+
+        return kernel;
+    }
+}
@@ -8,12 +8,29 @@ import gameboy.emulator.timer.DIVAPUTimer;
 import gameboy.emulator.timer.DIVAPUTimer.DIVAPUListener;
 
 public class Mixer implements SoundProducer {
+    // When resampling, output samples are synthesized once every this many APU ticks.
+    public final static int BLIP_FRAME_LENGTH = 1024;
+
+    // The channels are brought up to date whenever something could change how they sound, or once this many APU ticks have built up.
+    public final static int MAX_PENDING_TICKS = BLIP_FRAME_LENGTH;
+
+    // The APU ticks once every 4 clock ticks, and by default one sample is produced every APU tick.
+    public final static int APU_FREQUENCY = 1048576;
+
     public AddressMap addressMap;
 
     int clockCounter = 0;
 
+    // APU ticks that have passed but have not been run yet.
+    int pendingTicks = 0;
+
     public boolean isPoweredOn = false;
 
+    // When audio is disabled, only the state that games can observe through the sound registers is kept up to date: activity bits, lengths, sweep, and envelopes.
+    // The channels' waveforms are not advanced, and nothing is mixed or produced.
+    // This is decided before the clock is attached and does not change afterwards.
+    public boolean isAudioEnabled = true;
+
     SquareWaveSweepChannel channel1;
     SquareWaveChannel channel2;
     SampleChannel channel3;
@@ -21,6 +38,28 @@ public class Mixer implements SoundProducer {
 
     // Start the DIVAPU cycle offset by 1.
     int divAPUCount = 1;
+
+    // Decoded from NR50 and NR51 whenever they are written to.
+    int volumeLeft = 0;
+    int volumeRight = 0;
+    boolean isCH1Left, isCH2Left, isCH3Left, isCH4Left;
+    boolean isCH1Right, isCH2Right, isCH3Right, isCH4Right;
+
+    // By default, one sample is produced every APU tick. If an output sample rate is set, samples are instead synthesized at that rate from the amplitude changes.
+    BlipBuffer blipBufferLeft;
+    BlipBuffer blipBufferRight;
+    long apuFrequency;
+    int sampleRate;
+    int blipClockTime = 0;
+    int lastSampleLeft = 0;
+    int lastSampleRight = 0;
+
+    // Samples are handed to consumers in blocks, interleaved as left and then right for each frame.
+    short[] sampleBuffer = new short[MAX_PENDING_TICKS * 2];
+    int sampleBufferFrames = 0;
+
+    // A small adjustment to the output sample rate that consumers can use to match the rate that their samples are actually played at.
+    public volatile double sampleRateAdjustment = 1.0;
     
     public Mixer(AddressMap addressMap) {
         this.addressMap = addressMap;
@@ -33,14 +72,23 @@ public class Mixer implements SoundProducer {
         initStoreMap();
         initLoadMap();
         initActivityListeners();
+
+        channel1.updateRegisters();
+        channel2.updateRegisters();
+        channel3.updateRegisters();
+        channel4.updateRegisters();
+        updateRegisters();
     }
 
     public void initStoreMap() {
         // Attach callbacks for channel registers.
         // Note that nearly every sound register is read only when powered off.
+        // The channels are only advanced when something could change how they sound, so every write first brings them up to date.
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR10, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
 
@@ -55,6 +103,8 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR11, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
                 }
@@ -66,12 +116,15 @@ public class Mixer implements SoundProducer {
                 }
 
                 channel1.updateLength();
+                channel1.updateRegisters();
             }
         });
 
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR12, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
 
@@ -85,8 +138,11 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR13, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
+                    channel1.updateRegisters();
                 }
             }
         });
@@ -94,12 +150,15 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR14, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     int oldBit6 = (addressMap.data[region][relativeAddress] >>> 6) & 0b1;
                     int newBit6 = (b >>> 6) & 0b1;
                     int newBit7 = (b >>> 7) & 0b1;
 
                     super.onStore(region, relativeAddress, b);
+                    channel1.updateRegisters();
 
                     // Hardware quirk - length may be clocked an extra time.
                     if(divAPUCount % 2 == 0) {
@@ -125,6 +184,8 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR21, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
                 }
@@ -136,12 +197,15 @@ public class Mixer implements SoundProducer {
                 }
 
                 channel2.updateLength();
+                channel2.updateRegisters();
             }
         });
 
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR22, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
 
@@ -155,8 +219,11 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR23, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
+                    channel2.updateRegisters();
                 }
             }
         });
@@ -164,12 +231,15 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR24, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     int oldBit6 = (addressMap.data[region][relativeAddress] >>> 6) & 0b1;
                     int newBit6 = (b >>> 6) & 0b1;
                     int newBit7 = (b >>> 7) & 0b1;
 
                     super.onStore(region, relativeAddress, b);
+                    channel2.updateRegisters();
 
                     // Hardware quirk - length may be clocked an extra time.
                     if(divAPUCount % 2 == 0) {
@@ -195,6 +265,8 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR30, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
 
@@ -208,6 +280,8 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR31, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 // This register can be written to even when powered off.
                 super.onStore(region, relativeAddress, b);
 
@@ -218,8 +292,11 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR32, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
+                    channel3.updateRegisters();
                 }
             }
         });
@@ -227,8 +304,11 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR33, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
+                    channel3.updateRegisters();
                 }
             }
         });
@@ -236,12 +316,15 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR34, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     int oldBit6 = (addressMap.data[region][relativeAddress] >>> 6) & 0b1;
                     int newBit6 = (b >>> 6) & 0b1;
                     int newBit7 = (b >>> 7) & 0b1;
 
                     super.onStore(region, relativeAddress, b);
+                    channel3.updateRegisters();
 
                     // Hardware quirk - length may be clocked an extra time.
                     if(divAPUCount % 2 == 0) {
@@ -267,6 +350,8 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR41, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 // This register can be written to even when powered off.
                 super.onStore(region, relativeAddress, b);
 
@@ -277,6 +362,8 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR42, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
 
@@ -290,8 +377,11 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR43, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
+                    channel4.updateRegisters();
                 }
             }
         });
@@ -299,6 +389,8 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR44, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     int oldBit6 = (addressMap.data[region][relativeAddress] >>> 6) & 0b1;
                     int newBit6 = (b >>> 6) & 0b1;
@@ -330,8 +422,11 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR50, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
+                    updateRegisters();
                 }
             }
         });
@@ -339,8 +434,11 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR51, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 if(isPoweredOn) {
                     super.onStore(region, relativeAddress, b);
+                    updateRegisters();
                 }
             }
         });
@@ -348,6 +446,8 @@ public class Mixer implements SoundProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_NR52, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                catchUp();
+
                 byte oldValue = addressMap.data[region][relativeAddress];
 
                 // The lower 4 bits are read only, so writes should not affect them.
@@ -403,6 +503,13 @@ public class Mixer implements SoundProducer {
                     addressMap.storeByte(AddressMap.ADDRESS_NR51, (byte)0, true);
 
                     channel3.onPowerOff();
+
+                    // The registers were cleared directly, so the decoded values must be refreshed.
+                    channel1.updateRegisters();
+                    channel2.updateRegisters();
+                    channel3.updateRegisters();
+                    channel4.updateRegisters();
+                    updateRegisters();
                 }
 
                 if(!isPoweredOnOld && isPoweredOn) {
@@ -411,6 +518,17 @@ public class Mixer implements SoundProducer {
                 }
             }
         });
+
+        // Wave RAM - The sample channel reads it as it plays, so it must have caught up before the data changes.
+        for(int address = AddressMap.ADDRESS_WAVERAM; address <= AddressMap.ADDRESS_WAVERAM + 0xF; address++) {
+            addressMap.addStoreCallback(address, addressMap.new StoreCallback() {
+                @Override
+                public void onStore(int region, int relativeAddress, byte b) {
+                    catchUp();
+                    super.onStore(region, relativeAddress, b);
+                }
+            });
+        }
     }
 
     public void initLoadMap() {
@@ -552,21 +670,46 @@ public class Mixer implements SoundProducer {
         };
     }
 
+    public void updateRegisters() {
+        int nr51 = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_NR51, true));
+        isCH4Left = ((nr51 >>> 7) & 0b1) == 1;
+        isCH3Left = ((nr51 >>> 6) & 0b1) == 1;
+        isCH2Left = ((nr51 >>> 5) & 0b1) == 1;
+        isCH1Left = ((nr51 >>> 4) & 0b1) == 1;
+        isCH4Right = ((nr51 >>> 3) & 0b1) == 1;
+        isCH3Right = ((nr51 >>> 2) & 0b1) == 1;
+        isCH2Right = ((nr51 >>> 1) & 0b1) == 1;
+        isCH1Right = ((nr51) & 0b1) == 1;
+
+        int nr50 = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_NR50, true));
+        volumeLeft = (nr50 >>> 4) & 0b111;
+        volumeRight = nr50 & 0b111;
+    }
+
     public void setActivityBit(int n, int value) {
         // Sets the appropriate activity bit of NR52.
         addressMap.storeBit(AddressMap.ADDRESS_NR52, n, value, true);
     }
 
     public void attachClock(HybridClock hybridClock) {
-        // f = 1048576L
+        // Without audio, there are never any ticks to run, so there is no need to count them.
+        if(!isAudioEnabled) {
+            return;
+        }
+
         hybridClock.addTickCallback(new HybridClock.TickCallback() {
             @Override
             public void onTick() {
                 clockCounter++;
                 if(clockCounter == 4) {
                     clockCounter = 0;
-                    
-                    produceSample();
+
+                    // APU ticks are only counted here and run in a batch later.
+                    pendingTicks++;
+                    if(pendingTicks == MAX_PENDING_TICKS) {
+                        catchUp();
+                        flushSamples();
+                    }
                 }
             }
         });
@@ -582,6 +725,8 @@ public class Mixer implements SoundProducer {
     }
 
     public void onDIVAPU() {
+        catchUp();
+
         divAPUCount++;
         divAPUCount %= 8;
 
@@ -606,18 +751,76 @@ public class Mixer implements SoundProducer {
         }
     }
 
-    public void produceSample() {
+    public void setAudioEnabled(boolean isAudioEnabled) {
+        // This must be done before attaching the clock.
+        this.isAudioEnabled = isAudioEnabled;
+    }
+
+    public void setOutputSampleRate(long apuFrequency, int sampleRate) {
+        this.apuFrequency = apuFrequency;
+        this.sampleRate = sampleRate;
+
+        // Leave room for the sample rate adjustment.
+        int maxSamplesPerFrame = (int)Math.ceil(BLIP_FRAME_LENGTH * 1.1 * sampleRate / apuFrequency) + 1;
+        blipBufferLeft = new BlipBuffer(maxSamplesPerFrame);
+        blipBufferRight = new BlipBuffer(maxSamplesPerFrame);
+        blipBufferLeft.setRate(apuFrequency, sampleRate);
+        blipBufferRight.setRate(apuFrequency, sampleRate);
+        sampleBuffer = new short[(maxSamplesPerFrame + 1) * 2];
+        sampleBufferFrames = 0;
+    }
+
+    public void setSampleRateAdjustment(double sampleRateAdjustment) {
+        this.sampleRateAdjustment = sampleRateAdjustment;
+    }
+
+    public void catchUp() {
+        // Run all of the APU ticks that have passed since the last time the channels were brought up to date.
+        int ticks = pendingTicks;
+        pendingTicks = 0;
+
+        if(!isAudioEnabled) {
+            return;
+        }
+
         if(!isPoweredOn) {
             // The APU is powered off, so don't produce any sound bytes at all.
+            // If we are synthesizing at the output rate, silence must still be produced so that the output keeps up with emulation.
+            if(blipBufferLeft != null) {
+                addBlipSamples(0, 0, ticks);
+            }
             return;
         }
 
+        // The output can only change when a channel reaches its next edge, so jump straight from one edge to the next.
+        // Between edges, the output stays at what was mixed after the previous edge.
+        while(ticks > 0) {
+            int ticksUntilEdge = Math.min(Math.min(channel1.getTicksUntilEdge(), channel2.getTicksUntilEdge()), Math.min(channel3.getTicksUntilEdge(), channel4.getTicksUntilEdge()));
+            int step = Math.min(ticks, ticksUntilEdge);
+
+            if(step > 1) {
+                mixSamples(step - 1);
+            }
+
+            channel1.advance(step);
+            channel2.advance(step);
+            channel3.advance(step);
+            channel4.advance(step);
+            mixSamples(1);
+
+            ticks -= step;
+        }
+    }
+
+    public void mixSamples(int count) {
+        // Mix the current output of each channel and produce it for count APU ticks.
+
         // Note that we mix the digital signals without converting to analog.
         // Also, we will convert the samples to shorts so that we can have enough dynamic range.
-        short sample1 = channel1.produceSampleByte();
-        short sample2 = channel2.produceSampleByte();
-        short sample3 = channel3.produceSampleByte();
-        short sample4 = channel4.produceSampleByte();
+        short sample1 = channel1.getSampleByte();
+        short sample2 = channel2.getSampleByte();
+        short sample3 = channel3.getSampleByte();
+        short sample4 = channel4.getSampleByte();
 
         // The DAC being off will make a sample act as 0.
         sample1 = channel1.isDACEnabled ? sample1 : 0;
@@ -625,16 +828,6 @@ public class Mixer implements SoundProducer {
         sample3 = channel3.isDACEnabled ? sample3 : 0;
         sample4 = channel4.isDACEnabled ? sample4 : 0;
 
-        int nr51 = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_NR51));
-        boolean isCH4Left = ((nr51 >>> 7) & 0b1) == 1;
-        boolean isCH3Left = ((nr51 >>> 6) & 0b1) == 1;
-        boolean isCH2Left = ((nr51 >>> 5) & 0b1) == 1;
-        boolean isCH1Left = ((nr51 >>> 4) & 0b1) == 1;
-        boolean isCH4Right = ((nr51 >>> 3) & 0b1) == 1;
-        boolean isCH3Right = ((nr51 >>> 2) & 0b1) == 1;
-        boolean isCH2Right = ((nr51 >>> 1) & 0b1) == 1;
-        boolean isCH1Right = ((nr51) & 0b1) == 1;
-
         short sampleLeft = 0;
         sampleLeft += isCH1Left ? sample1 : 0;
         sampleLeft += isCH2Left ? sample2 : 0;
@@ -648,14 +841,73 @@ public class Mixer implements SoundProducer {
         sampleRight += isCH4Right ? sample4 : 0;
 
         // Use the left/right volume in a way that allows an approriate dynamic range.
-        int nr50 = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_NR50));
-        int volumeLeft = (nr50 >>> 4) & 0b111;
-        int volumeRight = nr50 & 0b111;
         sampleLeft <<= volumeLeft;
         sampleRight <<= volumeRight;
 
-        int fullSample = (sampleLeft << 16) | sampleRight;
-        produceSound(fullSample);
+        if(blipBufferLeft != null) {
+            addBlipSamples(sampleLeft, sampleRight, count);
+            return;
+        }
+
+        for(int i = 0; i < count; i++) {
+            sampleBuffer[sampleBufferFrames * 2] = sampleLeft;
+            sampleBuffer[(sampleBufferFrames * 2) + 1] = sampleRight;
+            sampleBufferFrames++;
+
+            if(sampleBufferFrames * 2 == sampleBuffer.length) {
+                flushSamples();
+            }
+        }
+    }
+
+    public void addBlipSamples(int sampleLeft, int sampleRight, int count) {
+        // Only changes in amplitude need to be recorded.
+        if(sampleLeft != lastSampleLeft) {
+            blipBufferLeft.addDelta(blipClockTime, sampleLeft - lastSampleLeft);
+            lastSampleLeft = sampleLeft;
+        }
+        if(sampleRight != lastSampleRight) {
+            blipBufferRight.addDelta(blipClockTime, sampleRight - lastSampleRight);
+            lastSampleRight = sampleRight;
+        }
+
+        // The amplitude holds for count APU ticks, which may cross the end of one or more frames.
+        while(count > 0) {
+            int ticks = Math.min(count, BLIP_FRAME_LENGTH - blipClockTime);
+            blipClockTime += ticks;
+            count -= ticks;
+
+            if(blipClockTime == BLIP_FRAME_LENGTH) {
+                blipClockTime = 0;
+                produceBlipSamples();
+            }
+        }
+    }
+
+    public void produceBlipSamples() {
+        blipBufferLeft.endFrame(BLIP_FRAME_LENGTH);
+        blipBufferRight.endFrame(BLIP_FRAME_LENGTH);
+
+        // The rate can only change between frames.
+        double adjustedSampleRate = sampleRate * sampleRateAdjustment;
+        blipBufferLeft.setRate(apuFrequency, adjustedSampleRate);
+        blipBufferRight.setRate(apuFrequency, adjustedSampleRate);
+
+        // Both channels receive the same timing, so they always have the same number of samples available.
+        int count = blipBufferLeft.getAvailableSamples();
+        blipBufferLeft.readSamples(sampleBuffer, 0, 2, count);
+        blipBufferRight.readSamples(sampleBuffer, 1, 2, count);
+        produceSamples(sampleBuffer, count, sampleRate);
+    }
+
+    public void flushSamples() {
+        // Hand any samples produced one APU tick at a time to the consumers.
+        if(sampleBufferFrames == 0) {
+            return;
+        }
+
+        produceSamples(sampleBuffer, sampleBufferFrames, APU_FREQUENCY);
+        sampleBufferFrames = 0;
     }
 
     // SoundProducer
@@ -21,6 +21,9 @@ public class NoiseChannel {
 
     public int valueCount = 0;
 
+    // Decoded from NR43 whenever it is written to.
+    int period = 0;
+
     public NoiseChannel(AddressMap addressMap) {
         this.addressMap = addressMap;
 
@@ -37,22 +40,50 @@ public class NoiseChannel {
         });
     }
 
-    public byte produceSampleByte() {
-        // If the channel is not active, still produce a sample with zero volume.
+    public int getTicksUntilEdge() {
+        // The register shifts on the APU tick that valueCount reaches the period. An inactive channel never changes.
+        // The period may have been shortened below valueCount, in which case the shift happens on the next tick.
         if(!isActive) {
-            return 0;
+            return Integer.MAX_VALUE;
+        }
+        int ticksUntilShift = Math.max(period - valueCount, 1);
+
+        // Most shifts leave bit 0 as it is, so the edge is the shift that changes it.
+        long ticksUntilEdge = ticksUntilShift + ((long)(noiseShiftRegister.getShiftsUntilChange() - 1) * period);
+        return (int)Math.min(ticksUntilEdge, Integer.MAX_VALUE);
+    }
+
+    public void advance(int ticks) {
+        // Jump forward by ticks APU ticks, shifting the register as many times as needed all at once.
+        if(!isActive) {
+            return;
         }
 
-        // Square wave shift
-        valueCount++;
-        if(valueCount >= getPeriod()) {
-            valueCount = 0;
-            noiseShiftRegister.shift();
+        int ticksUntilShift = Math.max(period - valueCount, 1);
+        if(ticks < ticksUntilShift) {
+            valueCount += ticks;
+            return;
+        }
+        ticks -= ticksUntilShift;
+
+        // After the first shift, the register shifts once every period.
+        valueCount = ticks % period;
+        noiseShiftRegister.shift(1 + (ticks / period));
+    }
+
+    public byte getSampleByte() {
+        // If the channel is not active, still produce a sample with zero volume.
+        if(!isActive) {
+            return 0;
         }
 
         return (byte)(noiseShiftRegister.getBit(0) * currentVolume);
     }
 
+    public void updateRegisters() {
+        period = getPeriod();
+    }
+
     public int getPeriod() {
         // Period of noise register shifting is (4 * divider * Math.pow(2, shift)) APU ticks.
         int nr43 = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_NR43, true));
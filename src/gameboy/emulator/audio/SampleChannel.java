@@ -21,20 +21,38 @@ public class SampleChannel {
     public int currentPosition = 1;
     public int valueCount = 0;
 
+    // Decoded from NR32, NR33, and NR34 whenever they are written to.
+    int volume = 0;
+    int periodOffset = 0;
+
     public SampleChannel(AddressMap addressMap) {
         this.addressMap = addressMap;
     }
 
-    public byte produceSampleByte() {
-        // If the channel is not active, still produce a sample with zero volume.
+    public int getTicksUntilEdge() {
+        // The position changes on the APU tick that valueCount reaches 1024. An inactive channel never changes.
         if(!isActive) {
-            return 0;
+            return Integer.MAX_VALUE;
         }
+        return Math.max(1024 - valueCount, 1);
+    }
+
+    public void advance(int ticks) {
+        // Jump forward by ticks APU ticks, stopping only at each change of position.
+        if(!isActive) {
+            return;
+        }
+
+        while(ticks > 0) {
+            int ticksUntilEdge = Math.max(1024 - valueCount, 1);
+            if(ticks < ticksUntilEdge) {
+                valueCount += ticks;
+                return;
+            }
+            ticks -= ticksUntilEdge;
 
-        // Square wave shift
-        valueCount++;
-        if(valueCount >= 1024) {
-            valueCount = getPeriodOffset();
+            // Square wave shift
+            valueCount = periodOffset;
 
             readStoredSample(currentPosition);
 
@@ -43,11 +61,17 @@ public class SampleChannel {
                 currentPosition = 0;
             }
         }
+    }
+
+    public byte getSampleByte() {
+        // If the channel is not active, still produce a sample with zero volume.
+        if(!isActive) {
+            return 0;
+        }
 
         byte sample = lastSample;
 
         // For this channel, volume mutes or right shifts the sample.
-        int volume = getVolume();
         if(volume == 0) {
             sample = 0;
         }
@@ -61,6 +85,11 @@ public class SampleChannel {
         return sample;
     }
 
+    public void updateRegisters() {
+        volume = getVolume();
+        periodOffset = getPeriodOffset();
+    }
+
     public int getVolume() {
         int volumeData = addressMap.loadByte(AddressMap.ADDRESS_NR32, true);
         return (volumeData >>> 5) & 0b11;
@@ -99,7 +128,7 @@ public class SampleChannel {
 
         // Set initial values
         currentPosition = 0;
-        valueCount = getPeriodOffset();
+        valueCount = periodOffset;
 
         if(currentLength == 256) {
             currentLength = 0;
@@ -22,28 +22,52 @@ public class SquareWaveChannel {
     public int currentPosition = 0;
     public int valueCount = 0;
 
+    // Decoded from NR21, NR23, and NR24 whenever they are written to.
+    int periodOffset = 0;
+    int pattern = 0;
+
     public SquareWaveChannel(AddressMap addressMap) {
         this.addressMap = addressMap;
     }
 
-    public byte produceSampleByte() {
-        // If the channel is not active, still produce a sample with zero volume.
+    public int getTicksUntilEdge() {
+        // The position changes on the APU tick that valueCount reaches 2048. An inactive channel never changes.
         if(!isActive) {
-            return 0;
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(2048 - valueCount, 1);
+    }
+
+    public void advance(int ticks) {
+        // Jump forward by ticks APU ticks, stopping only at each change of position.
+        if(!isActive) {
+            return;
         }
 
-        // Square wave shift
-        valueCount++;
-        if(valueCount >= 2048) {
-            valueCount = getPeriodOffset();
+        while(ticks > 0) {
+            int ticksUntilEdge = Math.max(2048 - valueCount, 1);
+            if(ticks < ticksUntilEdge) {
+                valueCount += ticks;
+                return;
+            }
+            ticks -= ticksUntilEdge;
+
+            // Square wave shift
+            valueCount = periodOffset;
 
             currentPosition++;
             if(currentPosition == 8) {
                 currentPosition = 0;
             }
         }
-        
-        int pattern = getChosenPattern();
+    }
+
+    public byte getSampleByte() {
+        // If the channel is not active, still produce a sample with zero volume.
+        if(!isActive) {
+            return 0;
+        }
+
         int mask = 0b00000001 << currentPosition;
         int currentValue = (pattern & mask) == mask ? 1 : 0;
         return (byte) (currentValue * currentVolume);
@@ -61,6 +85,11 @@ public class SquareWaveChannel {
         return (upper << 8) | lower;
     }
 
+    public void updateRegisters() {
+        periodOffset = getPeriodOffset();
+        pattern = getChosenPattern();
+    }
+
     public int getChosenPattern() {
         int chosenPattern = (Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_NR21, true)) >>> 6) & 0b11;
         return patterns[chosenPattern];
@@ -73,7 +102,7 @@ public class SquareWaveChannel {
         currentEnvelopeCount = 0;
         currentVolume = (Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_NR22, true)) & 0b11110000) >>> 4;
         currentPosition = 0;
-        valueCount = getPeriodOffset();
+        valueCount = periodOffset;
 
         if(currentLength == 64) {
             currentLength = 0;
@@ -28,28 +28,52 @@ public class SquareWaveSweepChannel {
     public int currentPosition = 0;
     public int valueCount = 0;
 
+    // Decoded from NR11, NR13, and NR14 whenever they are written to.
+    int periodOffset = 0;
+    int pattern = 0;
+
     public SquareWaveSweepChannel(AddressMap addressMap) {
         this.addressMap = addressMap;
     }
 
-    public byte produceSampleByte() {
-        // If the channel is not active, still produce a sample with zero volume.
+    public int getTicksUntilEdge() {
+        // The position changes on the APU tick that valueCount reaches 2048. An inactive channel never changes.
         if(!isActive) {
-            return 0;
+            return Integer.MAX_VALUE;
         }
+        return Math.max(2048 - valueCount, 1);
+    }
+
+    public void advance(int ticks) {
+        // Jump forward by ticks APU ticks, stopping only at each change of position.
+        if(!isActive) {
+            return;
+        }
+
+        while(ticks > 0) {
+            int ticksUntilEdge = Math.max(2048 - valueCount, 1);
+            if(ticks < ticksUntilEdge) {
+                valueCount += ticks;
+                return;
+            }
+            ticks -= ticksUntilEdge;
 
-        // Square wave shift
-        valueCount++;
-        if(valueCount >= 2048) {
-            valueCount = getPeriodOffset();
+            // Square wave shift
+            valueCount = periodOffset;
 
             currentPosition++;
             if(currentPosition == 8) {
                 currentPosition = 0;
             }
         }
-        
-        int pattern = getChosenPattern();
+    }
+
+    public byte getSampleByte() {
+        // If the channel is not active, still produce a sample with zero volume.
+        if(!isActive) {
+            return 0;
+        }
+
         int mask = 0b00000001 << currentPosition;
         int currentValue = (pattern & mask) == mask ? 1 : 0;
         return (byte) (currentValue * currentVolume);
@@ -75,6 +99,13 @@ public class SquareWaveSweepChannel {
 
         // Lower 8 bits
         addressMap.storeByte(AddressMap.ADDRESS_NR13, (byte)(periodOffset & 0xFF));
+
+        this.periodOffset = periodOffset;
+    }
+
+    public void updateRegisters() {
+        periodOffset = getPeriodOffset();
+        pattern = getChosenPattern();
     }
 
     public int getChosenPattern() {
@@ -92,7 +123,7 @@ public class SquareWaveSweepChannel {
         wasNegativeSweepCalculation = false;
 
         // Copy real period to the shadow period.
-        shadowPeriodOffset = getPeriodOffset();
+        shadowPeriodOffset = periodOffset;
 
         // Freqeuncy calculation without storing new value. This occurs even if pace = 0.
         if(step != 0) {
@@ -113,7 +144,7 @@ public class SquareWaveSweepChannel {
         currentEnvelopeCount = 0;
         currentVolume = (Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_NR12, true)) & 0b11110000) >>> 4;
         currentPosition = 0;
-        valueCount = getPeriodOffset();
+        valueCount = periodOffset;
 
         if(currentLength == 64) {
             currentLength = 0;
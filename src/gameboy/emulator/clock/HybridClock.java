@@ -1,9 +1,19 @@
 package gameboy.emulator.clock;
 
 import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
 
 // A clock that can schedule a variety of tick and frame callbacks.
 public class HybridClock {
+    // When waiting for the next frame, the thread sleeps until this many nanoseconds before the deadline and then spins for precision.
+    public final static long SPIN_TIME = 1000000L;
+
+    // If emulation falls more than this many frames behind, the missed frames are dropped instead of being run back to back to catch up.
+    public final static int MAX_CATCH_UP_FRAMES = 3;
+
+    public final static double MIN_SPEED_MULTIPLIER = 0.25;
+    public final static double MAX_SPEED_MULTIPLIER = 8.0;
+
     public ArrayList<TickCallback> tickCallbacks = new ArrayList<>();
     public TickCallback[] tickCallbacksArray;
     public ArrayList<FrameCallback> frameCallbacks = new ArrayList<>();
@@ -15,6 +25,24 @@ public class HybridClock {
 
     TimingInfo timingInfo;
 
+    // Set if emulating the most recent frame finished after the next frame should have already started.
+    public volatile boolean isBehindSchedule = false;
+
+    // The number of frames that were dropped because emulation fell too far behind.
+    public volatile long droppedFrameCount = 0;
+
+    // Emulation can be run faster or slower than the real Game Boy, or as fast as possible.
+    // Outside of real time, asynchronous frame callbacks are still only run at most once per real frame so that presentation does not slow down emulation.
+    public volatile double speedMultiplier = 1.0;
+    public volatile boolean isUnthrottled = false;
+
+    // When set, frames are paced by this source instead of the system clock, but only while running in real time.
+    public volatile PacingSource pacingSource;
+
+    // Time that the tick thread spent during the current frame waiting on something outside of emulation, such as another Game Boy on a link cable.
+    // This is only touched by the tick thread while it runs a frame and by the base thread once the frame is complete, so the frame locks keep it consistent.
+    public long externalWaitTime = 0;
+
     // Synchronization locks
     public int startLockCount = 0;
     public int startLockTotal = 0;
@@ -149,12 +177,33 @@ public class HybridClock {
             @Override
             public void run() {
                 long frameDeltaTime = (long)(Math.pow(10, 9) / timingInfo.framesPerSecond);
-                long startTime = System.nanoTime();
+
+                // Frames are scheduled against absolute deadlines so that small delays do not accumulate into drift.
+                long deadline = System.nanoTime() + frameDeltaTime;
+                long lastAsyncFrameTime = 0;
 
                 while(true) {
+                    long framePeriod;
+                    if(isUnthrottled) {
+                        // Run frames back to back.
+                        framePeriod = 0;
+                        deadline = System.nanoTime();
+                    }
+                    else {
+                        framePeriod = (long)(frameDeltaTime / speedMultiplier);
+
+                        PacingSource currentPacingSource = pacingSource;
+                        if(currentPacingSource != null && isRealTime()) {
+                            // Let the pacing source decide when the next frame starts. Keeping the deadline in sync allows switching back to the system clock at any time.
+                            deadline = System.nanoTime() + Math.max(0, currentPacingSource.getDelay());
+                        }
+                    }
+
                     // If we are ahead of schedule, wait for the frame to complete.
-                    while(System.nanoTime() - startTime <= frameDeltaTime);
-                    startTime = System.nanoTime();
+                    if(!waitUntil(deadline)) {
+                        return;
+                    }
+                    deadline += framePeriod;
 
                     //long debugTime = System.nanoTime();
 
@@ -172,29 +221,49 @@ public class HybridClock {
                         }
                     }
 
+                    // Waiting on something outside of emulation does not mean that emulation is too slow, so it is not counted as lateness.
+                    // The schedule itself is kept, so whatever was waited on cannot slow this clock down over time.
+                    long lateness = System.nanoTime() - deadline - externalWaitTime;
+                    externalWaitTime = 0;
+                    isBehindSchedule = !isUnthrottled && lateness > 0;
+
+                    // Being slightly behind is made up by running the next frames without waiting, but being far behind is not worth catching up on.
+                    if(isBehindSchedule && lateness > MAX_CATCH_UP_FRAMES * framePeriod) {
+                        long numDroppedFrames = lateness / framePeriod;
+                        droppedFrameCount += numDroppedFrames;
+                        deadline += numDroppedFrames * framePeriod;
+                    }
+
                     //long debugDeltaTime = System.nanoTime() - debugTime;
                     //if(debugDeltaTime >= 16666666) {
                     //    System.out.println("FRAME = " + debugDeltaTime);
                     //}
 
-                    // Unlock frame callbacks.
-                    synchronized(frameCompleteLock) {
-                        synchronized(frameActionLock) {
-                            frameActionLock.notify();
-                        }
+                    // Unlock frame callbacks. If there are none, there is no reason to wait for the frame thread.
+                    if(frameCallbacksArray.length > 0) {
+                        synchronized(frameCompleteLock) {
+                            synchronized(frameActionLock) {
+                                frameActionLock.notify();
+                            }
 
-                        try {
-                            frameCompleteLock.wait();
-                        }
-                        catch(InterruptedException e) {
-                            return;
+                            try {
+                                frameCompleteLock.wait();
+                            }
+                            catch(InterruptedException e) {
+                                return;
+                            }
                         }
                     }
 
                     // Unlock asynchronous frame callbacks. We do not wait for these to complete.
-                    for(Object asyncFrameActionLock : asyncFrameActionLocksArray) {
-                        synchronized(asyncFrameActionLock) {
-                            asyncFrameActionLock.notify();
+                    long asyncFrameTime = System.nanoTime();
+                    if(isRealTime() || asyncFrameTime - lastAsyncFrameTime >= frameDeltaTime) {
+                        lastAsyncFrameTime = asyncFrameTime;
+
+                        for(Object asyncFrameActionLock : asyncFrameActionLocksArray) {
+                            synchronized(asyncFrameActionLock) {
+                                asyncFrameActionLock.notify();
+                            }
                         }
                     }
                 }
@@ -226,6 +295,48 @@ public class HybridClock {
         baseThread.start();
     }
 
+    public void setSpeedMultiplier(double speedMultiplier) {
+        this.speedMultiplier = Math.max(MIN_SPEED_MULTIPLIER, Math.min(speedMultiplier, MAX_SPEED_MULTIPLIER));
+    }
+
+    public void setUnthrottled(boolean isUnthrottled) {
+        this.isUnthrottled = isUnthrottled;
+    }
+
+    public void setPacingSource(PacingSource pacingSource) {
+        this.pacingSource = pacingSource;
+    }
+
+    public void addExternalWaitTime(long waitTime) {
+        // This must only be called from a tick callback.
+        externalWaitTime += waitTime;
+    }
+
+    public boolean isRealTime() {
+        return !isUnthrottled && speedMultiplier == 1.0;
+    }
+
+    public static boolean waitUntil(long deadline) {
+        // Sleep until shortly before the deadline and then spin, which is precise without keeping a core busy for the whole wait.
+        // Returns false if the thread was interrupted.
+        while(true) {
+            if(Thread.interrupted()) {
+                return false;
+            }
+
+            long remainingTime = deadline - System.nanoTime();
+            if(remainingTime <= 0) {
+                return true;
+            }
+            else if(remainingTime > SPIN_TIME) {
+                LockSupport.parkNanos(remainingTime - SPIN_TIME);
+            }
+            else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
     public void stop() {
         // Immediately interrupt all threads.
         baseThread.interrupt();
@@ -243,4 +354,9 @@ public class HybridClock {
     abstract public static class FrameCallback {
         abstract public void onFrame();
     }
+
+    abstract public static class PacingSource {
+        // Returns how many nanoseconds to wait before running the next frame.
+        abstract public long getDelay();
+    }
 }
\ No newline at end of file
@@ -126,8 +126,9 @@ public class DebugScreenOAM extends Screen {
             // For objects, each map entry is 4 bytes of information.
             int tileMapAddress = tileMapAddressBase + (objectID * 4);
 
+            // This runs on a frame thread, so OAM is read directly rather than through callbacks that act on emulation state.
             for(int i = 0; i < 4; i++) {
-                objectAttributes[objectID][i] = Byte.toUnsignedInt(addressMap.loadByte(tileMapAddress + i));
+                objectAttributes[objectID][i] = Byte.toUnsignedInt(addressMap.loadByte(tileMapAddress + i, true));
             }
         }
         return objectAttributes;
@@ -1,7 +1,5 @@
 package gameboy.emulator.interaction;
 
-import java.util.HashMap;
-
 import gameboy.data.SignalConsumer;
 import gameboy.emulator.clock.HybridClock;
 import gameboy.emulator.memory.AddressMap;
@@ -22,24 +20,19 @@ public class Controller implements SignalConsumer {
 
     AddressMap addressMap;
 
-    // Keeps track of which buttons are pressed.
-    HashMap<Integer, Boolean> buttonMap = new HashMap<>();
+    // Keeps track of which buttons are pressed. Bit (1 << button) is set while that button is held down.
+    // Input arrives on another thread, so it is only applied to JOYP by the emulation thread once it notices a change.
+    volatile int pressedButtons = 0;
+    int appliedButtons = 0;
 
     public Controller(AddressMap addressMap) {
         this.addressMap = addressMap;
 
-        // All buttons are initially unpressed.
-        buttonMap.put(BUTTON_UP, false);
-        buttonMap.put(BUTTON_DOWN, false);
-        buttonMap.put(BUTTON_LEFT, false);
-        buttonMap.put(BUTTON_RIGHT, false);
-        buttonMap.put(BUTTON_A, false);
-        buttonMap.put(BUTTON_B, false);
-        buttonMap.put(BUTTON_START, false);
-        buttonMap.put(BUTTON_SELECT, false);
-
         initStoreMap();
         initLoadMap();
+
+        // All buttons are initially unpressed.
+        updateJOYP();
     }
 
     public void initStoreMap() {
@@ -51,6 +44,9 @@ public class Controller implements SignalConsumer {
                 int oldLowerBits = Byte.toUnsignedInt(oldValue) & 0b00001111;
                 int newUpperBits = Byte.toUnsignedInt(b) & 0b11110000;
                 super.onStore(region, relativeAddress, (byte)(newUpperBits | oldLowerBits));
+
+                // A different set of buttons may now be connected to the lower bits.
+                updateJOYP();
             }
         });
     }
@@ -69,8 +65,12 @@ public class Controller implements SignalConsumer {
         hybridClock.addTickCallback(new HybridClock.TickCallback() {
             @Override
             public void onTick() {
-                // Note that JOYP must be updated every tick because the buttons that are connected to the register's output may switch at any time.
-                updateJOYP();
+                // JOYP only has to be updated when the buttons change, which is checked for every tick so that presses are seen at the same cycle as before.
+                int currentPressedButtons = pressedButtons;
+                if(currentPressedButtons != appliedButtons) {
+                    appliedButtons = currentPressedButtons;
+                    updateJOYP();
+                }
             }
         });
     }
@@ -78,48 +78,41 @@ public class Controller implements SignalConsumer {
     public void updateJOYP() {
         // The logic of JOYP is the opposite of most registers.
         // For bits 4 and 5, 0 means selected and 1 means not selected.
-        // For bits 1-3, pressed keys reset joystick pins and released keys set joystick pins.
-        int oldJOYP = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_JOYP));
-        int oldJOYPHigh = oldJOYP & 0b00001111;
-
-        int bit5 = (oldJOYP >>> 5) & 0b1;
-        int bit4 = (oldJOYP >>> 4) & 0b1;
-        int bit3 = (oldJOYP >>> 3) & 0b1;
-        int bit2 = (oldJOYP >>> 2) & 0b1;
-        int bit1 = (oldJOYP >>> 1) & 0b1;
-        int bit0 = (oldJOYP >>> 0) & 0b1;
-
-        if(bit5 == 0 && bit4 == 1) {
-            bit3 = buttonMap.get(BUTTON_START) ? 0 : 1;
-            bit2 = buttonMap.get(BUTTON_SELECT) ? 0 : 1;
-            bit1 = buttonMap.get(BUTTON_B) ? 0 : 1;
-            bit0 = buttonMap.get(BUTTON_A) ? 0 : 1;
+        // For bits 0-3, pressed keys reset joystick pins and released keys set joystick pins.
+        int oldJOYP = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_JOYP, true));
+        int oldJOYPLow = oldJOYP & 0b00001111;
+
+        int selectBits = oldJOYP & 0b00110000;
+
+        int pressedBits;
+        if(selectBits == 0b00010000) {
+            pressedBits = getPressedBits(BUTTON_START, BUTTON_SELECT, BUTTON_B, BUTTON_A);
         }
-        else if(bit5 == 1 && bit4 == 0) {
-            bit3 = buttonMap.get(BUTTON_DOWN) ? 0 : 1;
-            bit2 = buttonMap.get(BUTTON_UP) ? 0 : 1;
-            bit1 = buttonMap.get(BUTTON_LEFT) ? 0 : 1;
-            bit0 = buttonMap.get(BUTTON_RIGHT) ? 0 : 1;
+        else if(selectBits == 0b00100000) {
+            pressedBits = getPressedBits(BUTTON_DOWN, BUTTON_UP, BUTTON_LEFT, BUTTON_RIGHT);
         }
         else {
             // In these two cases, nothing is selected.
-            bit3 = 1;
-            bit2 = 1;
-            bit1 = 1;
-            bit0 = 1;
+            pressedBits = 0;
         }
 
-        int newJOYPLow = (bit3 << 3) | (bit2 << 2) | (bit1 << 1) | (bit0 << 0);
-        int newJOYP = (bit5 << 5) | (bit4 << 4) | newJOYPLow;
+        int newJOYPLow = ~pressedBits & 0b00001111;
+        int newJOYP = selectBits | newJOYPLow;
 
         addressMap.storeByte(AddressMap.ADDRESS_JOYP, (byte)newJOYP, true);
-        
-        if((oldJOYPHigh & ~newJOYPLow) != 0) {
+
+        if((oldJOYPLow & ~newJOYPLow) != 0) {
             // Request Joypad Interrupt.
             addressMap.storeBit(AddressMap.ADDRESS_IF, 4, 1);
         }
     }
 
+    public int getPressedBits(int button3, int button2, int button1, int button0) {
+        // Returns the four buttons as bits 3-0, where 1 means pressed.
+        int buttons = appliedButtons;
+        return (((buttons >>> button3) & 0b1) << 3) | (((buttons >>> button2) & 0b1) << 2) | (((buttons >>> button1) & 0b1) << 1) | ((buttons >>> button0) & 0b1);
+    }
+
     // SignalConsumer
     @Override
     public void consumeSignal(int action, int button) {
@@ -130,11 +123,11 @@ public class Controller implements SignalConsumer {
 
         switch(action) {
         case ACTION_PRESS:
-            buttonMap.put(button, true);
+            pressedButtons |= 0b1 << button;
             break;
 
         case ACTION_RELEASE:
-            buttonMap.put(button, false);
+            pressedButtons &= ~(0b1 << button);
             break;
 
         default:
@@ -0,0 +1,49 @@
+package gameboy.emulator.link;
+
+// A link cable between two Game Boys running in the same process.
+public class LinkCable {
+    public Port port1 = new Port();
+    public Port port2 = new Port();
+
+    public LinkCable() {
+        port1.peer = port2;
+        port2.peer = port1;
+    }
+
+    public static class Port extends LinkPort {
+        Port peer;
+
+        volatile long cycleCount = 0;
+
+        // Set once a Game Boy has run with this end of the cable. An end that is never used must not be waited on.
+        volatile boolean isStarted = false;
+
+        @Override
+        public void publishCycleCount(long cycleCount) {
+            this.cycleCount = cycleCount;
+            isStarted = true;
+        }
+
+        @Override
+        public long getPeerCycleCount() {
+            return peer.cycleCount;
+        }
+
+        @Override
+        public boolean isPeerConnected() {
+            return peer.isStarted && !peer.isClosed;
+        }
+
+        @Override
+        public byte transfer(byte b, long cycleCount) {
+            // Make sure the other Game Boy has caught up to this transfer before seeing whether it is waiting for one.
+            publishCycleCount(cycleCount);
+            waitForPeer(cycleCount);
+
+            if(isClosed || !isPeerConnected()) {
+                return (byte)0xFF;
+            }
+            return peer.receiveTransfer(b);
+        }
+    }
+}
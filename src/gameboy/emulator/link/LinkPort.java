@@ -0,0 +1,93 @@
+package gameboy.emulator.link;
+
+import java.util.concurrent.locks.LockSupport;
+
+// One end of a link cable between two Game Boys.
+// Each Game Boy runs on its own thread, and the two only synchronize once per quantum and at the end of each transfer.
+// Keeping them within a quantum of each other is enough for bytes to arrive about when they would on real hardware.
+// The other Game Boy only counts as connected once it has started running with its end of the cable. Until then, this end behaves like an unplugged cable.
+abstract public class LinkPort {
+    // Connected Game Boys never run more than this many cycles apart.
+    public final static int QUANTUM = 4096;
+
+    // While waiting for the other Game Boy, spin for this many nanoseconds and then sleep for this many nanoseconds at a time.
+    public final static long SPIN_TIME = 100000L;
+    public final static long SLEEP_TIME = 50000L;
+
+    // Set while this Game Boy is waiting for the other one to start a transfer, along with the byte it will send back.
+    boolean isArmed = false;
+    byte armedByte = 0;
+
+    // A byte received from the other Game Boy, which is given to this one when it next synchronizes.
+    volatile boolean hasIncomingByte = false;
+    byte incomingByte = 0;
+
+    volatile boolean isClosed = false;
+
+    public synchronized void arm(byte b) {
+        isArmed = true;
+        armedByte = b;
+    }
+
+    public synchronized void disarm() {
+        isArmed = false;
+    }
+
+    public int pollIncomingByte() {
+        // Returns the received byte, or -1 if there is none.
+        if(!hasIncomingByte) {
+            return -1;
+        }
+
+        synchronized(this) {
+            hasIncomingByte = false;
+            return Byte.toUnsignedInt(incomingByte);
+        }
+    }
+
+    public synchronized byte receiveTransfer(byte b) {
+        // The other Game Boy sent a byte with its own clock. This Game Boy only takes part if it was waiting for a transfer, and otherwise the other side reads 1s.
+        if(!isArmed) {
+            return (byte)0xFF;
+        }
+
+        isArmed = false;
+        incomingByte = b;
+        hasIncomingByte = true;
+        return armedByte;
+    }
+
+    public void sync(long cycleCount) {
+        // Let the other Game Boy know how far we are, and wait if we are getting too far ahead of it.
+        publishCycleCount(cycleCount);
+        waitForPeer(cycleCount - QUANTUM);
+    }
+
+    public void waitForPeer(long cycleCount) {
+        // Wait until the other Game Boy has reached the cycle, unless either side is disconnected or the thread is interrupted.
+        long spinDeadline = System.nanoTime() + SPIN_TIME;
+        while(!isClosed && isPeerConnected() && getPeerCycleCount() < cycleCount) {
+            if(Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            if(System.nanoTime() < spinDeadline) {
+                Thread.onSpinWait();
+            }
+            else {
+                LockSupport.parkNanos(SLEEP_TIME);
+            }
+        }
+    }
+
+    public void close() {
+        isClosed = true;
+    }
+
+    abstract public void publishCycleCount(long cycleCount);
+    abstract public long getPeerCycleCount();
+    abstract public boolean isPeerConnected();
+
+    // Sends a byte with this Game Boy's clock at the given cycle, and returns the byte that the other Game Boy sent back.
+    abstract public byte transfer(byte b, long cycleCount);
+}
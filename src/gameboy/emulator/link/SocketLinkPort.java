@@ -0,0 +1,184 @@
+package gameboy.emulator.link;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// A link cable to a Game Boy running in another process on the same host, over a local socket.
+// One side listens and the other connects, after which both sides are the same.
+public class SocketLinkPort extends LinkPort {
+    // Each message is one of these types followed by its data.
+    public final static int MESSAGE_CYCLE_COUNT = 0; // long: how far the sender has run
+    public final static int MESSAGE_TRANSFER = 1; // byte: sent with the sender's clock
+    public final static int MESSAGE_REPLY = 2; // byte: sent back in answer to a transfer
+
+    Socket socket;
+    DataInputStream in;
+    DataOutputStream out;
+    Thread readerThread;
+
+    volatile long peerCycleCount = 0;
+    volatile boolean isPeerConnected = true;
+
+    // Set once the other Game Boy has reported how far it has run, meaning that it is actually running.
+    volatile boolean isPeerStarted = false;
+
+    // The reply to our most recent transfer, or -1 if it has not arrived yet.
+    Object replyLock = new Object();
+    int reply = -1;
+
+    public static SocketLinkPort listen(int portNumber) {
+        // Wait for the other Game Boy to connect.
+        try(ServerSocket serverSocket = new ServerSocket(portNumber, 1, InetAddress.getLoopbackAddress())) {
+            return new SocketLinkPort(serverSocket.accept());
+        }
+        catch(IOException e) {
+            throw(new IllegalStateException(e));
+        }
+    }
+
+    public static SocketLinkPort connect(int portNumber) {
+        try {
+            return new SocketLinkPort(new Socket(InetAddress.getLoopbackAddress(), portNumber));
+        }
+        catch(IOException e) {
+            throw(new IllegalStateException(e));
+        }
+    }
+
+    public SocketLinkPort(Socket socket) throws IOException {
+        this.socket = socket;
+
+        // Messages are tiny and latency matters far more than throughput.
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        // Messages are read on their own thread, so a transfer from the other side is answered without waiting for this Game Boy's emulation.
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readMessages();
+            }
+        });
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    public void readMessages() {
+        try {
+            while(true) {
+                int type = in.readByte();
+                if(type == MESSAGE_CYCLE_COUNT) {
+                    peerCycleCount = in.readLong();
+                    isPeerStarted = true;
+                }
+                else if(type == MESSAGE_TRANSFER) {
+                    byte b = in.readByte();
+                    sendByte(MESSAGE_REPLY, receiveTransfer(b));
+                }
+                else if(type == MESSAGE_REPLY) {
+                    byte b = in.readByte();
+                    synchronized(replyLock) {
+                        reply = Byte.toUnsignedInt(b);
+                        replyLock.notifyAll();
+                    }
+                }
+                else {
+                    throw new IOException("Unknown link message type: " + type);
+                }
+            }
+        }
+        catch(IOException e) {
+            // The other side closed the connection, or we did.
+            onDisconnect();
+        }
+    }
+
+    public void onDisconnect() {
+        isPeerConnected = false;
+        synchronized(replyLock) {
+            replyLock.notifyAll();
+        }
+    }
+
+    public void sendByte(int type, byte b) {
+        synchronized(out) {
+            try {
+                out.writeByte(type);
+                out.writeByte(b);
+                out.flush();
+            }
+            catch(IOException e) {
+                onDisconnect();
+            }
+        }
+    }
+
+    @Override
+    public void publishCycleCount(long cycleCount) {
+        synchronized(out) {
+            try {
+                out.writeByte(MESSAGE_CYCLE_COUNT);
+                out.writeLong(cycleCount);
+                out.flush();
+            }
+            catch(IOException e) {
+                onDisconnect();
+            }
+        }
+    }
+
+    @Override
+    public long getPeerCycleCount() {
+        return peerCycleCount;
+    }
+
+    @Override
+    public boolean isPeerConnected() {
+        return isPeerStarted && isPeerConnected;
+    }
+
+    @Override
+    public byte transfer(byte b, long cycleCount) {
+        // Make sure the other Game Boy has caught up to this transfer before asking whether it is waiting for one.
+        publishCycleCount(cycleCount);
+        waitForPeer(cycleCount);
+
+        synchronized(replyLock) {
+            reply = -1;
+            if(isClosed || !isPeerConnected()) {
+                return (byte)0xFF;
+            }
+            sendByte(MESSAGE_TRANSFER, b);
+
+            while(reply == -1 && isPeerConnected) {
+                try {
+                    replyLock.wait();
+                }
+                catch(InterruptedException e) {
+                    // Keep the interrupt so that the clock thread still stops.
+                    Thread.currentThread().interrupt();
+                    return (byte)0xFF;
+                }
+            }
+            return reply == -1 ? (byte)0xFF : (byte)reply;
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            socket.close();
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -7,6 +7,8 @@ import gameboy.emulator.memory.AddressMap;
 public class DMAProcessor {
     public AddressMap addressMap;
 
+    OAMListener oamListener;
+
     byte lastDMAByte;
 
     int numTCycles = 0;
@@ -15,6 +17,13 @@ public class DMAProcessor {
     int sourceAddressBase;
     int bytesWritten;
 
+    // When the source is plain work RAM, bytes are only counted as written on their M-Cycle and are copied into OAM later in one block.
+    // This is only done while nothing can observe OAM, and any access that could tell the difference copies the pending bytes first.
+    boolean isBlockTransfer = false;
+    int sourceRegion;
+    int sourceRelativeAddressBase;
+    int bytesCopied;
+
     public DMAProcessor(AddressMap addressMap) {
         this.addressMap = addressMap;
 
@@ -38,8 +47,27 @@ public class DMAProcessor {
                 isDMATransfer = true;
                 sourceAddressBase = Byte.toUnsignedInt(b) << 8;
                 bytesWritten = 0;
+
+                // A source page never crosses a work RAM region, so the whole transfer can be copied from a single array.
+                sourceRegion = addressMap.externalBus.decodeRegion(sourceAddressBase);
+                sourceRelativeAddressBase = addressMap.externalBus.decodeRelativeAddress(sourceAddressBase);
+                isBlockTransfer = oamListener != null && (sourceRegion == AddressMap.REGION_WRAMA || sourceRegion == AddressMap.REGION_WRAMB);
+                bytesCopied = 0;
             }
         });
+
+        // Writing to work RAM could change source bytes that were already transferred but not copied yet.
+        for(int address = 0xC000; address <= 0xDFFF; address++) {
+            addressMap.addStoreCallback(address, addressMap.new StoreCallback() {
+                @Override
+                public void onStore(int region, int relativeAddress, byte b) {
+                    if(bytesCopied < bytesWritten) {
+                        copyPendingBytes();
+                    }
+                    super.onStore(region, relativeAddress, b);
+                }
+            });
+        }
     }
 
     public void initLoadMap() {
@@ -49,6 +77,20 @@ public class DMAProcessor {
                 return lastDMAByte;
             }
         });
+
+        // Reading OAM must see every byte that has been transferred so far.
+        // Only the processor and the PPU read OAM through the bus, so pending bytes are always copied on the emulation thread.
+        for(int address = 0xFE00; address <= 0xFE9F; address++) {
+            addressMap.addLoadCallback(address, addressMap.new LoadCallback() {
+                @Override
+                public byte onLoad(int region, int relativeAddress) {
+                    if(bytesCopied < bytesWritten) {
+                        copyPendingBytes();
+                    }
+                    return super.onLoad(region, relativeAddress);
+                }
+            });
+        }
     }
 
     public void attachClock(HybridClock hybridClock) {
@@ -61,15 +103,29 @@ public class DMAProcessor {
                     return;
                 }
 
+                // Pending bytes must be in OAM before the PPU can look at it again.
+                if(bytesCopied < bytesWritten && oamListener.isOAMInUse()) {
+                    copyPendingBytes();
+                }
+
                 // Simulate waiting for prior instruction to complete.
                 if(numTCycles > 0) {
                     numTCycles--;
                     return;
                 }
 
-                // The DMA transfer loads data with the external bus.
-                addressMap.storeByte(0xFE00 + bytesWritten, addressMap.loadByte(sourceAddressBase + bytesWritten, addressMap.externalBus));
-                bytesWritten++;
+                if(isBlockTransfer) {
+                    bytesWritten++;
+                    if(oamListener.isOAMInUse()) {
+                        copyPendingBytes();
+                    }
+                }
+                else {
+                    // The DMA transfer loads data with the external bus.
+                    addressMap.storeByte(0xFE00 + bytesWritten, addressMap.loadByte(sourceAddressBase + bytesWritten, addressMap.externalBus));
+                    bytesWritten++;
+                    bytesCopied = bytesWritten;
+                }
 
                 if(bytesWritten < 160) {
                     // Keep going.    
@@ -77,9 +133,39 @@ public class DMAProcessor {
                 }
                 else {
                     // Complete DMA transfer.
+                    copyPendingBytes();
                     isDMATransfer = false;
                 }
             }
         });
     }
+
+    public void copyPendingBytes() {
+        // Copy every byte that has been transferred but is not in OAM yet.
+        int length = bytesWritten - bytesCopied;
+        if(length == 0) {
+            return;
+        }
+
+        // The range is no longer pending before the listener runs, so any OAM reads it makes see the old contents instead of copying the range again.
+        int oamOffset = bytesCopied;
+        bytesCopied = bytesWritten;
+
+        byte[] source = addressMap.data[sourceRegion];
+        int sourceOffset = sourceRelativeAddressBase + oamOffset;
+        oamListener.onOAMBlockStore(oamOffset, source, sourceOffset, length);
+        System.arraycopy(source, sourceOffset, addressMap.data[AddressMap.REGION_OAM], oamOffset, length);
+    }
+
+    public void setOAMListener(OAMListener oamListener) {
+        this.oamListener = oamListener;
+    }
+
+    abstract public static class OAMListener {
+        // Returns true if OAM may be read at any moment, in which case transferred bytes are copied right away.
+        abstract public boolean isOAMInUse();
+
+        // This is called right before the bytes are copied into OAM.
+        abstract public void onOAMBlockStore(int oamOffset, byte[] source, int sourceOffset, int length);
+    }
 }
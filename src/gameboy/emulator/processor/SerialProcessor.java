@@ -1,13 +1,30 @@
 package gameboy.emulator.processor;
 
 import gameboy.emulator.clock.HybridClock;
+import gameboy.emulator.link.LinkPort;
 import gameboy.emulator.memory.AddressMap;
 
 // This class is a separate processor responsible for dealing with the serial data transfer registers
 public class SerialProcessor {
+    // The internal serial clock ticks once every this many cycles, and a transfer shifts SB once per serial clock tick.
+    public final static int CYCLES_PER_SHIFT = 512;
+
     public AddressMap addressMap;
+    public HybridClock hybridClock;
+
+    long cycleCount = 0;
+
+    // The cycle where the next bit of the current transfer is shifted. Nothing needs to be done until then, or at all when there is no transfer.
+    long nextShiftCycle = -1;
+
+    // When connected to another Game Boy by a link cable, bytes are exchanged with it instead of shifting in 1s.
+    // The two Game Boys synchronize at this cycle, once per quantum.
+    LinkPort linkPort;
+    long nextSyncCycle = -1;
+    byte outgoingByte = 0;
 
-    int clockCounter = 0;
+    // The earlier of the next shift and the next synchronization.
+    long nextEventCycle = -1;
 
     public int serialCounter = 0;
     public boolean isTransfer = false;
@@ -33,6 +50,21 @@ public class SerialProcessor {
                 if(oldBit7 == 0 && newBit7 == 1 && newBit0 == 1) {
                     serialCounter = 0;
                     isTransfer = true;
+
+                    // The serial clock keeps running between transfers, so the first shift happens on its next tick.
+                    nextShiftCycle = ((cycleCount / CYCLES_PER_SHIFT) + 1) * CYCLES_PER_SHIFT;
+                    outgoingByte = addressMap.loadByte(AddressMap.ADDRESS_SB, true);
+                    scheduleNextEvent();
+                }
+
+                // A transfer with the external clock waits for the other Game Boy to start it.
+                if(linkPort != null) {
+                    if(newBit7 == 1 && newBit0 == 0) {
+                        linkPort.arm(addressMap.loadByte(AddressMap.ADDRESS_SB, true));
+                    }
+                    else {
+                        linkPort.disarm();
+                    }
                 }
             }
         });
@@ -49,37 +81,105 @@ public class SerialProcessor {
     }
 
     public void attachClock(HybridClock hybridClock) {
+        this.hybridClock = hybridClock;
+
         // f = 8192L
         hybridClock.addTickCallback(new HybridClock.TickCallback() {
             @Override
             public void onTick() {
-                clockCounter++;
-                if(clockCounter == 512) {
-                    clockCounter = 0;
-                    
-                    if(isTransfer) {
-                        serialCounter++;
-
-                        // Shift SB by one bit.
-                        // The output byte is discarded, and the input byte will always be 1.
-                        byte reg_sb = addressMap.loadByte(AddressMap.ADDRESS_SB, true);
-                        reg_sb <<= 1;
-                        reg_sb |= 0b1;
-                        addressMap.storeByte(AddressMap.ADDRESS_SB, reg_sb, true);
-
-                        if(serialCounter == 8) {
-                            serialCounter = 0;
-
-                            // Transfer is finished.
-                            isTransfer = false;
-                            addressMap.storeBit(AddressMap.ADDRESS_SC, 7, 0, true);
-
-                            // Request Serial Interrupt.
-                            addressMap.storeBit(AddressMap.ADDRESS_IF, 3, 1);
-                        }
-                    }
+                cycleCount++;
+                if(cycleCount == nextEventCycle) {
+                    onEvent();
                 }
             }
         });
     }
+
+    public void connect(LinkPort linkPort) {
+        // This must be done before the clock is started.
+        this.linkPort = linkPort;
+        nextSyncCycle = cycleCount + LinkPort.QUANTUM;
+        scheduleNextEvent();
+    }
+
+    public void disconnect() {
+        // The other Game Boy stops waiting for this one, which will only read 1s from then on.
+        if(linkPort != null) {
+            linkPort.close();
+        }
+    }
+
+    public void scheduleNextEvent() {
+        if(nextShiftCycle == -1) {
+            nextEventCycle = nextSyncCycle;
+        }
+        else if(nextSyncCycle == -1) {
+            nextEventCycle = nextShiftCycle;
+        }
+        else {
+            nextEventCycle = Math.min(nextShiftCycle, nextSyncCycle);
+        }
+    }
+
+    public void onEvent() {
+        if(cycleCount == nextShiftCycle) {
+            onShift();
+        }
+        if(cycleCount == nextSyncCycle) {
+            onSync();
+        }
+        scheduleNextEvent();
+    }
+
+    public void onSync() {
+        // Time spent waiting for the other Game Boy is not counted against this one's frame schedule.
+        long waitStartTime = System.nanoTime();
+        linkPort.sync(cycleCount);
+        hybridClock.addExternalWaitTime(System.nanoTime() - waitStartTime);
+        nextSyncCycle += LinkPort.QUANTUM;
+
+        int incomingByte = linkPort.pollIncomingByte();
+        if(incomingByte != -1) {
+            // The other Game Boy finished a transfer that this one was waiting for.
+            addressMap.storeByte(AddressMap.ADDRESS_SB, (byte)incomingByte, true);
+            addressMap.storeBit(AddressMap.ADDRESS_SC, 7, 0, true);
+
+            // Request Serial Interrupt.
+            addressMap.storeBit(AddressMap.ADDRESS_IF, 3, 1);
+        }
+    }
+
+    public void onShift() {
+        serialCounter++;
+
+        // Shift SB by one bit, shifting in 1s as if nothing were connected.
+        // Without a link cable, the output byte is discarded. With one, the byte is sent to the other Game Boy once all 8 bits have been shifted,
+        // and SB is replaced by the byte it sends back, which is all 1s if it was not waiting for a transfer.
+        byte reg_sb = addressMap.loadByte(AddressMap.ADDRESS_SB, true);
+        reg_sb <<= 1;
+        reg_sb |= 0b1;
+        addressMap.storeByte(AddressMap.ADDRESS_SB, reg_sb, true);
+
+        if(serialCounter == 8) {
+            serialCounter = 0;
+
+            // The whole byte is exchanged with the other Game Boy at once.
+            if(linkPort != null) {
+                long waitStartTime = System.nanoTime();
+                addressMap.storeByte(AddressMap.ADDRESS_SB, linkPort.transfer(outgoingByte, cycleCount), true);
+                hybridClock.addExternalWaitTime(System.nanoTime() - waitStartTime);
+            }
+
+            // Transfer is finished.
+            isTransfer = false;
+            nextShiftCycle = -1;
+            addressMap.storeBit(AddressMap.ADDRESS_SC, 7, 0, true);
+
+            // Request Serial Interrupt.
+            addressMap.storeBit(AddressMap.ADDRESS_IF, 3, 1);
+        }
+        else {
+            nextShiftCycle += CYCLES_PER_SHIFT;
+        }
+    }
 }
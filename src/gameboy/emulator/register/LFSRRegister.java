@@ -1,7 +1,13 @@
 package gameboy.emulator.register;
 
+import java.util.Arrays;
+
 // A 16-bit LFSR register.
 public class LFSRRegister {
+    // The register only ever moves through a fixed cycle of states for each width, so the cycles are stored along with where each state is in them.
+    // This allows shifting any number of times at once.
+    public final static LFSRSequence[] sequences = new LFSRSequence[] { new LFSRSequence(0), new LFSRSequence(1) };
+
     public short data;
     public int width = 0;
 
@@ -15,21 +21,58 @@ public class LFSRRegister {
     // Step 2: If "short mode" was selected in NR43, then bit 15 is copied to bit 7 as well.
     // Step 3: The entire LFSR is shifted right.
     public void shift() {
-        int bit0 = getBit(0);
-        int bit1 = getBit(1);
+        setInt(getNextState(getInt(), width));
+    }
+
+    public void shift(int count) {
+        setInt(getStateAfterShifts(count));
+    }
+
+    public int getStateAfterShifts(int count) {
+        // Returns what the register would hold after shifting count times, without changing it.
+        LFSRSequence sequence = sequences[width];
+        int state = getInt();
+
+        // A state that is not on the cycle, such as right after a reset or a change of width, reaches it within a few shifts.
+        while(count > 0 && sequence.positions[state] == -1) {
+            int nextState = getNextState(state, width);
+            count--;
+
+            // A state that shifts into itself is stuck there forever.
+            if(nextState == state) {
+                return state;
+            }
+            state = nextState;
+        }
+
+        if(count > 0) {
+            int length = sequence.states.length;
+            state = sequence.states[(int)((sequence.positions[state] + (long)count) % length)];
+        }
+        return state;
+    }
+
+    public int getShiftsUntilChange() {
+        // Returns how many shifts it takes for bit 0 to change. If this cannot be known ahead of time, 1 is returned.
+        LFSRSequence sequence = sequences[width];
+        int position = sequence.positions[getInt()];
+        return position == -1 ? 1 : sequence.runLengths[position];
+    }
+
+    public static int getNextState(int state, int width) {
+        int bit0 = state & 0b1;
+        int bit1 = (state >>> 1) & 0b1;
         int bit01 = bit0 == bit1 ? 1 : 0;
 
-        setBit(15, bit01);
+        state = (state & ~(0b1 << 15)) | (bit01 << 15);
 
         // 0 = long mode
         // 1 = short mode
         if(width == 1) {
-            setBit(6, bit01);
+            state = (state & ~(0b1 << 6)) | (bit01 << 6);
         }
 
-        int value = getInt();
-        value >>>= 1;
-        setInt(value);
+        return state >>> 1;
     }
 
     public int getInt() {
@@ -54,4 +97,52 @@ public class LFSRRegister {
             data &= ~mask;
         }
     }
-}
\ No newline at end of file
+
+    public static class LFSRSequence {
+        // The states of the cycle in the order the register moves through them.
+        public int[] states;
+
+        // The index of each state in states, or -1 if the state is not on the cycle.
+        public int[] positions;
+
+        // For each index in states, the number of shifts until bit 0 changes.
+        public int[] runLengths;
+
+        public LFSRSequence(int width) {
+            // Starting from the reset value, any state that is not on the cycle is left behind after at most 16 shifts.
+            int start = 0;
+            for(int i = 0; i < 16; i++) {
+                start = getNextState(start, width);
+            }
+
+            int length = 0;
+            int state = start;
+            do {
+                length++;
+                state = getNextState(state, width);
+            } while(state != start);
+
+            states = new int[length];
+            positions = new int[0x10000];
+            Arrays.fill(positions, -1);
+            for(int i = 0; i < length; i++) {
+                states[i] = state;
+                positions[state] = i;
+                state = getNextState(state, width);
+            }
+
+            // Walk the cycle backwards twice so that runs that wrap around the end are counted too.
+            runLengths = new int[length];
+            for(int i = (2 * length) - 1; i >= 0; i--) {
+                int index = i % length;
+                int nextIndex = (index + 1) % length;
+                if((states[index] & 0b1) != (states[nextIndex] & 0b1)) {
+                    runLengths[index] = 1;
+                }
+                else {
+                    runLengths[index] = runLengths[nextIndex] + 1;
+                }
+            }
+        }
+    }
+}
@@ -2,7 +2,6 @@ package gameboy.emulator.timer;
 
 import gameboy.emulator.clock.HybridClock;
 import gameboy.emulator.memory.AddressMap;
-import gameboy.emulator.register.DIVRegister;
 
 public class DIVTimer {
     AddressMap addressMap;
@@ -10,7 +9,15 @@ public class DIVTimer {
     DIVListener divListener;
 
     // Internally, DIV is a 16-bit register whose upper 8 bits map to 0xFF04.
-    public DIVRegister divRegister = new DIVRegister();
+    // It is not stored, but computed from the number of cycles since it was last reset.
+    public long cycleCount = 0;
+    public long divResetCycle = 0;
+
+    // TIMA is only brought up to date when it is accessed, by counting the falling edges of its DIV bit since this cycle.
+    public long timaSyncCycle = 0;
+
+    // The next cycle where a falling edge of DIV matters, either to the DIV-APU or because TIMA overflows. Nothing needs to be done between these cycles.
+    public long nextEdgeCycle = 0;
 
     public int timaCycle = 0; // 0 = normal, 1 = A, 2 = B
     public int numTCycles = 0;
@@ -20,6 +27,8 @@ public class DIVTimer {
 
         initStoreMap();
         initLoadMap();
+
+        scheduleNextEdge();
     }
 
     public void initStoreMap() {
@@ -40,6 +49,9 @@ public class DIVTimer {
                 if(timaCycle != 2) {
                     super.onStore(region, relativeAddress, b);
                 }
+
+                // The overflow moves with the new value.
+                scheduleNextEdge();
             }
         });
 
@@ -56,16 +68,25 @@ public class DIVTimer {
             public void onStore(int region, int relativeAddress, byte b) {
                 onWriteTAC(b);
                 super.onStore(region, relativeAddress, b);
+                onTACStored();
             }
         });
     }
 
     public void initLoadMap() {
+        addressMap.addLoadCallback(AddressMap.ADDRESS_TIMA, addressMap.new LoadCallback() {
+            @Override
+            public byte onLoad(int region, int relativeAddress) {
+                updateTIMA();
+                return super.onLoad(region, relativeAddress);
+            }
+        });
+
         addressMap.addLoadCallback(AddressMap.ADDRESS_DIV, addressMap.new LoadCallback() {
             @Override
             public byte onLoad(int region, int relativeAddress) {
                 // The byte value of this register is the upper byte of the full DIV Register.
-                return (byte)((Short.toUnsignedInt(divRegister.data) & 0xFF00) >>> 8);
+                return (byte)((getDIV() & 0xFF00) >>> 8);
             }
         });
 
@@ -83,17 +104,38 @@ public class DIVTimer {
         hybridClock.addTickCallback(new HybridClock.TickCallback() {
             @Override
             public void onTick() {
-                incrementDIV();
+                cycleCount++;
+                if(cycleCount == nextEdgeCycle) {
+                    onEdge();
+                }
+
+                if(timaCycle != 0) {
+                    updateTIMACycle();
+                }
             }
         });
     }
 
+    public int getDIV() {
+        return (int)(cycleCount - divResetCycle) & 0xFFFF;
+    }
+
     public void onResetDIV() {
-        int fallingEdges = divRegister.reset();
+        // TIMA must count the edges from before the reset first, since they are counted from when DIV was last reset.
+        updateTIMA();
+
+        // Every bit that was set experiences a falling edge.
+        int fallingEdges = getDIV();
+        divResetCycle = cycleCount;
         checkFallingEdge(fallingEdges);
+
+        scheduleNextEdge();
     }
 
     public void onWriteTIMA() {
+        // The written value replaces TIMA as of now.
+        updateTIMA();
+
         // If we write at this point, the overflow will never happen.
         if(timaCycle == 1) {
             numTCycles = 0;
@@ -104,16 +146,21 @@ public class DIVTimer {
     public void onWriteTMA(byte b) {
         // If we write at this point, the value written to TMA gets copied into TIMA.
         if(timaCycle == 2) {
+            updateTIMA();
             addressMap.storeByte(AddressMap.ADDRESS_TIMA, b, true);
+            scheduleNextEdge();
         }
     }
 
     public void onWriteTAC(byte b) {
+        // TIMA counts edges with the old settings up to this point.
+        updateTIMA();
+
         int oldTACBit2 = addressMap.loadBit(AddressMap.ADDRESS_TAC, 2);
         int newTACBit2 = (b >>> 2) & 0b1;
 
         int n = getTIMABit();
-        int timaBitN = (divRegister.data >>> n) & 0b1;
+        int timaBitN = (getDIV() >>> n) & 0b1;
 
         // This could potentially trigger a TIMA increment due to a hardware quirk.
         if((oldTACBit2 & timaBitN) == 1 && (newTACBit2 & timaBitN) == 0) {
@@ -121,10 +168,76 @@ public class DIVTimer {
         }
     }
 
-    public void incrementDIV() {
-        int fallingEdges = divRegister.increment();
-        checkFallingEdge(fallingEdges);
+    public void onTACStored() {
+        // The TIMA bit and whether TIMA is enabled may have changed.
+        scheduleNextEdge();
+    }
+
+    public void updateTIMA() {
+        // Add the falling edges of the TIMA bit since TIMA was last brought up to date.
+        // An edge that overflows TIMA is always scheduled, so this only overflows TIMA when called at that edge.
+        long lastSyncCycle = timaSyncCycle;
+        timaSyncCycle = cycleCount;
+
+        if(addressMap.loadBit(AddressMap.ADDRESS_TAC, 2) == 0) {
+            // TIMA is disabled.
+            return;
+        }
+
+        long period = 0b1L << (getTIMABit() + 1);
+        long edges = ((cycleCount - divResetCycle) / period) - ((lastSyncCycle - divResetCycle) / period);
+        if(edges == 0) {
+            return;
+        }
+
+        int value = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_TIMA, true)) + (int)edges;
+        if(value >= 256) {
+            value -= 256;
+
+            // When TIMA overflows, changes do not happen until the next M-Cycle.
+            timaCycle = 1;
+        }
+
+        addressMap.storeByte(AddressMap.ADDRESS_TIMA, (byte)value, true);
+    }
+
+    public void scheduleNextEdge() {
+        // A bit of DIV falls when DIV becomes a multiple of twice that bit's value.
+        // The DIV-APU always watches bit 12. While TIMA is enabled, the edge of its chosen bit that overflows TIMA is also watched.
+        int div = getDIV();
+        long cyclesUntilEdge = getCyclesUntilFallingEdge(div, 12);
+        if(addressMap.loadBit(AddressMap.ADDRESS_TAC, 2) == 1) {
+            updateTIMA();
+
+            int n = getTIMABit();
+            int tima = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_TIMA, true));
+            long cyclesUntilOverflow = getCyclesUntilFallingEdge(div, n) + ((255 - tima) * (0b1L << (n + 1)));
+            cyclesUntilEdge = Math.min(cyclesUntilEdge, cyclesUntilOverflow);
+        }
+        nextEdgeCycle = cycleCount + cyclesUntilEdge;
+    }
+
+    public static long getCyclesUntilFallingEdge(int div, int n) {
+        int period = 0b1 << (n + 1);
+        return period - (div & (period - 1));
+    }
+
+    public void onEdge() {
+        // TIMA picks up its own edges, including the one that overflows it.
+        updateTIMA();
+
+        int div = getDIV();
+        int fallingEdges = ((div - 1) & 0xFFFF) & ~div;
+        if(((fallingEdges >>> 12) & 0b1) == 1) {
+            if(divListener != null) {
+                divListener.onTick();
+            }
+        }
+
+        scheduleNextEdge();
+    }
 
+    public void updateTIMACycle() {
         if(timaCycle == 1) {
             // TIMA Overflow happens one M-Cycle later, so check here instead of waiting for a falling edge.
             numTCycles++;
@@ -136,7 +249,9 @@ public class DIVTimer {
                 addressMap.storeBit(AddressMap.ADDRESS_IF, 2, 1);
 
                 // Reset TIMA to the TMA value.
+                updateTIMA();
                 addressMap.storeByte(AddressMap.ADDRESS_TIMA, addressMap.loadByte(AddressMap.ADDRESS_TMA), true);
+                scheduleNextEdge();
             }
         }
         else if(timaCycle == 2) {
@@ -166,7 +281,8 @@ public class DIVTimer {
             return;
         }
 
-        int value = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_TIMA));
+        updateTIMA();
+        int value = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_TIMA, true));
         value++;
 
         if(value == 256) {
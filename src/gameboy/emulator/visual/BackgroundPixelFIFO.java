@@ -32,6 +32,9 @@ public class BackgroundPixelFIFO {
     boolean isActive;
     boolean canYield;
 
+    // Tile data does not affect timing, so it does not need to be fetched for frames that are not drawn.
+    boolean isFetchSkipped;
+
     int x;
     int y;
 
@@ -135,6 +138,10 @@ public class BackgroundPixelFIFO {
     }
 
     public void fetchTileID() {
+        if(isFetchSkipped) {
+            return;
+        }
+
         // Update upper 5 bits of SCX and all of SCY here.
         scrollX = (Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_SCX)) & 0b11111000) | (scrollX & 0b00000111);
         scrollY = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_SCY));
@@ -143,10 +150,18 @@ public class BackgroundPixelFIFO {
     }
 
     public void fetchLowTileData() {
+        if(isFetchSkipped) {
+            return;
+        }
+
         tileDataLow = getTileData(0);
     }
 
     public void fetchHighTileData() {
+        if(isFetchSkipped) {
+            return;
+        }
+
         tileDataHigh = getTileData(1);
     }
 
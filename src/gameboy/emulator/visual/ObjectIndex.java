@@ -0,0 +1,110 @@
+package gameboy.emulator.visual;
+
+import gameboy.emulator.memory.AddressMap;
+
+// Caches the objects that are visible on every line so that OAM does not have to be scanned through the bus each line.
+// The index is only rebuilt after OAM has been written to or the object size (LCDC bit 2) has changed.
+public class ObjectIndex {
+    // There are 168 possible starting x-positions in [-8, 159], so each line's mask needs 3 longs.
+    public final static int MASK_LENGTH = 3;
+
+    AddressMap addressMap;
+
+    // For each line, stores up to 10 visible objects ordered by priority.
+    int[][][] sortedOAMIndex = new int[256][10][2]; // 0 -> x, 1 -> objectID
+    int[] numVisibleObjects = new int[256];
+
+    // For each line, a bit is set for every x-position where at least one visible object starts.
+    long[][] xStartMasks = new long[256][MASK_LENGTH];
+
+    boolean isDirty = true;
+    boolean isLargeMode;
+
+    public ObjectIndex(AddressMap addressMap) {
+        this.addressMap = addressMap;
+    }
+
+    public void onOAMStore() {
+        isDirty = true;
+    }
+
+    public void update(boolean isLargeMode) {
+        if(isDirty || this.isLargeMode != isLargeMode) {
+            rebuild(isLargeMode);
+        }
+    }
+
+    public void rebuild(boolean isLargeMode) {
+        this.isLargeMode = isLargeMode;
+        isDirty = false;
+
+        for(int line = 0; line < 256; line++) {
+            numVisibleObjects[line] = 0;
+            for(int i = 0; i < MASK_LENGTH; i++) {
+                xStartMasks[line][i] = 0;
+            }
+        }
+
+        // Objects are inserted in OAM order, exactly as the OAM scan would see them.
+        byte[] oam = addressMap.data[AddressMap.REGION_OAM];
+        int height = isLargeMode ? 16 : 8;
+        for(int objectID = 0; objectID < 40; objectID++) {
+            int yObj = Byte.toUnsignedInt(oam[objectID * 4]) - 16;
+            int xObj = Byte.toUnsignedInt(oam[objectID * 4 + 1]) - 8;
+
+            // A visible object has y within [o.y, o.y + height].
+            int firstLine = Math.max(yObj, 0);
+            int lastLine = yObj + height - 1;
+            for(int line = firstLine; line <= lastLine; line++) {
+                insert(line, xObj, objectID);
+            }
+        }
+    }
+
+    public void insert(int line, int newEntryX, int newEntryID) {
+        // Each line can only have up to 10 visible objects.
+        int numObjects = numVisibleObjects[line];
+        if(numObjects == 10) {
+            return;
+        }
+
+        int[][] lineIndex = sortedOAMIndex[line];
+
+        // Find proper location of the new element.
+        int c = 0;
+        for(int i = 0; i < numObjects; i++) {
+            // The new entry always has the highest OAM index seen so far, so we only need to check x.
+            if(newEntryX < lineIndex[i][0]) {
+                break;
+            }
+            c++;
+        }
+
+        // Insert the new element here and shift everything else to the right, lowering their priority.
+        for(int i = numObjects; i > c; i--) {
+            lineIndex[i][0] = lineIndex[i - 1][0];
+            lineIndex[i][1] = lineIndex[i - 1][1];
+        }
+        lineIndex[c][0] = newEntryX;
+        lineIndex[c][1] = newEntryID;
+
+        numVisibleObjects[line]++;
+        setXStart(xStartMasks[line], newEntryX);
+    }
+
+    public static void setXStart(long[] xStartMask, int x) {
+        // Objects starting past the right edge of the screen can never be reached.
+        int bit = x + 8;
+        if(bit < 168) {
+            xStartMask[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public static boolean isXStart(long[] xStartMask, int x) {
+        int bit = x + 8;
+        if(bit < 0 || bit >= 168) {
+            return false;
+        }
+        return (xStartMask[bit >>> 6] & (1L << bit)) != 0;
+    }
+}
@@ -15,6 +15,13 @@ public class ObjectPixelFIFO {
     int lastDrawnObject;
     int objectID;
 
+    // Bits are set for each x-position where at least one of the visible objects starts.
+    long[] xStartMask = new long[ObjectIndex.MASK_LENGTH];
+
+    // While this is set, the OAM scan for the current line will be taken from the object index instead of from OAM.
+    ObjectIndex objectIndex;
+    boolean isOAMScanCached;
+
     boolean isObjectEnabled;
     boolean isLargeMode;
 
@@ -29,11 +36,15 @@ public class ObjectPixelFIFO {
     boolean isActive;
     boolean isWaiting;
 
+    // Tile data does not affect timing, so it does not need to be fetched for frames that are not drawn.
+    boolean isFetchSkipped;
+
     int x;
     int y;
 
     public ObjectPixelFIFO(AddressMap addressMap) {
         this.addressMap = addressMap;
+        this.objectIndex = new ObjectIndex(addressMap);
     }
 
     public void onLineStart() {
@@ -44,6 +55,11 @@ public class ObjectPixelFIFO {
         lastDrawnObject = -1;
         objectID = 0;
 
+        for(int i = 0; i < ObjectIndex.MASK_LENGTH; i++) {
+            xStartMask[i] = 0;
+        }
+        isOAMScanCached = true;
+
         for(int i = 0; i < 8; i++) {
             pixelData[i][0] = 0;
             pixelData[i][1] = 0;
@@ -61,12 +77,50 @@ public class ObjectPixelFIFO {
 
     public void advanceOAMState() {
         if(oamCounter % 2 == 0) {
-            oamScan();
+            if(!isOAMScanCached) {
+                oamScan();
+            }
+            else if(oamCounter == 78) {
+                // All 40 objects have now been scanned without OAM changing, so the index has the same result.
+                loadOAMScan();
+            }
         }
 
         oamCounter++;
     }
 
+    public void loadOAMScan() {
+        isOAMScanCached = false;
+
+        objectIndex.update(isLargeMode);
+
+        numVisibleObjects = objectIndex.numVisibleObjects[y];
+        for(int i = 0; i < numVisibleObjects; i++) {
+            sortedOAMIndex[i][0] = objectIndex.sortedOAMIndex[y][i][0];
+            sortedOAMIndex[i][1] = objectIndex.sortedOAMIndex[y][i][1];
+        }
+
+        for(int i = 0; i < ObjectIndex.MASK_LENGTH; i++) {
+            xStartMask[i] = objectIndex.xStartMasks[y][i];
+        }
+    }
+
+    public void onOAMStore() {
+        // This is called right before OAM is written to.
+        objectIndex.onOAMStore();
+
+        // If OAM changes partway through a cached scan, the objects that were already scanned must still see the old data.
+        // Scan those objects now and then finish the rest of the line normally.
+        if(isOAMScanCached && oamCounter > 0) {
+            isOAMScanCached = false;
+
+            int numScanned = (oamCounter + 1) / 2;
+            for(int i = 0; i < numScanned; i++) {
+                oamScan();
+            }
+        }
+    }
+
     public void advanceDrawState() {
         if(drawCounter == 0) {
             fetchTileID();
@@ -95,14 +149,26 @@ public class ObjectPixelFIFO {
     }
 
     public void fetchTileID() {
+        if(isFetchSkipped) {
+            return;
+        }
+
         tileID = getObjectTileID();
     }
 
     public void fetchLowTileData() {
+        if(isFetchSkipped) {
+            return;
+        }
+
         tileDataLow = getObjectTileData(0);
     }
 
     public void fetchHighTileData() {
+        if(isFetchSkipped) {
+            return;
+        }
+
         tileDataHigh = getObjectTileData(1);
     }
 
@@ -112,6 +178,11 @@ public class ObjectPixelFIFO {
             return;
         }
 
+        // Most x-positions do not have an object starting there, so rule those out with a single bit test.
+        if(!ObjectIndex.isXStart(xStartMask, x)) {
+            return;
+        }
+
         int c = lastDrawnObject + 1;
         for(int i = lastDrawnObject + 1; i < numVisibleObjects; i++) {
             int xObj = sortedOAMIndex[i][0];
@@ -147,6 +218,12 @@ public class ObjectPixelFIFO {
     }
 
     public void pushPixelSet() {
+        if(isFetchSkipped) {
+            drawCounter = 0;
+            isActive = false;
+            return;
+        }
+
         // Push 8 pixels to the Object FIFO.
         int tileMapAddressBase = 0xFE00;
         int tileMapAddress = tileMapAddressBase + (tileObjectID * 4);
@@ -268,6 +345,7 @@ public class ObjectPixelFIFO {
             sortedOAMIndex[c][1] = newEntryID;
 
             numVisibleObjects++;
+            ObjectIndex.setXStart(xStartMask, newEntryX);
         }
 
         objectID++;
@@ -23,6 +23,14 @@ public class PixelFetcher {
     // Current mode of rendering.
     int state;
 
+    // Palettes decoded from BGP, OBP0, and OBP1 that map each colorID to a colorIndex.
+    // These are refreshed whenever one of those registers is written to.
+    int[] backgroundPalette = new int[4];
+    int[][] objectPalettes = new int[2][4];
+
+    // While set, the FIFOs keep their exact timing but no tile data is fetched and no pixels are output.
+    boolean isRenderingSkipped;
+
     public PixelFetcher(AddressMap addressMap, Screen screen) {
         this.addressMap = addressMap;
         this.screen = screen;
@@ -42,6 +50,28 @@ public class PixelFetcher {
         objectPixelFIFO.y = y;
     }
 
+    public void setRenderingSkipped(boolean isRenderingSkipped) {
+        this.isRenderingSkipped = isRenderingSkipped;
+        backgroundPixelFIFO.isFetchSkipped = isRenderingSkipped;
+        objectPixelFIFO.isFetchSkipped = isRenderingSkipped;
+    }
+
+    public void updateBackgroundPalette(byte b) {
+        decodePalette(b, backgroundPalette);
+    }
+
+    public void updateObjectPalette(int n, byte b) {
+        decodePalette(b, objectPalettes[n]);
+    }
+
+    public void decodePalette(byte b, int[] palette) {
+        // Each colorID uses 2 bits of the palette register, starting with colorID 0 in the lowest bits.
+        int paletteData = Byte.toUnsignedInt(b);
+        for(int colorID = 0; colorID < 4; colorID++) {
+            palette[colorID] = (paletteData >>> (colorID * 2)) & 0b11;
+        }
+    }
+
     public void reset() {
         frameDotsProcessed = 0;
         setX(-8);
@@ -93,6 +123,7 @@ public class PixelFetcher {
                 // Once we have drawn the last pixel in a line, Mode 3 is finished.
                 state = STATE_HBLANK;
                 screen.setSTATMode(0);
+                screen.onLineEnd(y);
             }
         }
         else if(state == STATE_HBLANK) {
@@ -205,8 +236,8 @@ public class PixelFetcher {
                 return;
             }
 
-            if(x < 0) {
-                // Do not draw offscreen pixels.
+            if(x < 0 || isRenderingSkipped) {
+                // Do not draw offscreen pixels or pixels for skipped frames.
                 setX(x + 1);
                 return;
             }
@@ -223,16 +254,10 @@ public class PixelFetcher {
             // Retrieve the appropriate color based on the source and colorID of the pixel.
             int colorIndex;
             if(isObjectVisible) {
-                int paletteAddress = objectPixelFIFO.poppedPixel[2] == 0 ? AddressMap.ADDRESS_OBP0 : AddressMap.ADDRESS_OBP1;
-                int paletteData = Byte.toUnsignedInt(addressMap.loadByte(paletteAddress));
-                int shift = objectPixelFIFO.poppedPixel[0] * 2;
-                colorIndex = (paletteData >>> shift) & 0b11;
+                colorIndex = objectPalettes[objectPixelFIFO.poppedPixel[2]][objectPixelFIFO.poppedPixel[0]];
             }
             else if(isBackgroundVisible) {
-                int paletteAddress = AddressMap.ADDRESS_BGP;
-                int paletteData = Byte.toUnsignedInt(addressMap.loadByte(paletteAddress));
-                int shift = backgroundPixelFIFO.poppedPixel[0] * 2;
-                colorIndex = (paletteData >>> shift) & 0b11;
+                colorIndex = backgroundPalette[backgroundPixelFIFO.poppedPixel[0]];
             }
             else {
                 // If neither source can produce a visible pixel, just draw a white pixel.
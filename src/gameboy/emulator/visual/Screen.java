@@ -1,9 +1,12 @@
 package gameboy.emulator.visual;
 
+import java.util.Arrays;
+
 import gameboy.data.ImageConsumer;
 import gameboy.data.ImageProducer;
 import gameboy.emulator.clock.HybridClock;
 import gameboy.emulator.memory.AddressMap;
+import gameboy.emulator.processor.DMAProcessor;
 
 // Screen Buffer (background): 256x256 pixels or 32x32 tiles (tile is 8x8 pixels)
 // Only 160x144 pixels (20x18 tiles) can be displayed on the screen
@@ -48,15 +51,42 @@ import gameboy.emulator.memory.AddressMap;
 // Write to $FF46 to initiate transfer of data to OAM region.
 
 public class Screen implements ImageProducer {
+    // When adaptive frame skipping is on, this is the most frames that can be skipped in a row beyond the fixed amount.
+    public final static int MAX_ADAPTIVE_FRAME_SKIP = 4;
+
     public AddressMap addressMap;
+    public HybridClock hybridClock;
+    public DMAProcessor dmaProcessor;
 
     public boolean isPoweredOn = false;
     public int frameEnableCount = 0;
 
+    // Skipped frames keep exact mode, LY, and STAT timing, but do not fetch or output any pixels.
+    public int frameSkip = 0; // Number of frames skipped after every drawn frame.
+    public boolean isAdaptiveFrameSkip = false; // Also skip frames while the clock is behind schedule.
+    public int framesSkipped = 0;
+    public boolean isFrameSkipped = false;
+
+    // If nothing that affects the image was changed during a frame, the next frame will look identical.
+    // Such "static" frames reuse the frame buffer and skip pixel fetching, but still keep exact mode, LY, and STAT timing.
+    public boolean isVisualStateChanged = true; // Set when VRAM, OAM, or a PPU register is written with a new value.
+    public boolean isFrameBufferCurrent = false; // Set when the frame buffer holds exactly what the current state would draw.
+    public boolean isStaticFrame = false;
+    public boolean isDrawResumePending = false;
+
+    // Whether the most recently output frame could differ from the one before it.
+    public boolean isFrameChanged = true;
+
+    // Holds the colorIndex of every pixel, row by row. This is shared with all image consumers.
+    public byte[] frameBuffer;
+
     public PixelFetcher pixelFetcher;
 
     public boolean isSTATHigh = false;
 
+    // The STAT interrupt line only changes when the mode, LY/LYC, or STAT change, so it is only recomputed after one of those events.
+    public boolean isSTATLineDirty = true;
+
     // Needed to emulate a hardware quirk:
     // Upon entering VBlank on line 144, there is a brief opportunity to fire an OAM-STAT interrupt.
     public boolean isLine144InterruptAllowed = false;
@@ -66,6 +96,7 @@ public class Screen implements ImageProducer {
         this.addressMap = addressMap;
 
         this.pixelFetcher = new PixelFetcher(addressMap, this);
+        this.frameBuffer = new byte[getWidth() * getHeight()];
 
         // Set initial mode to Mode 2 - OAM Scan and LY to 0.
         setSTATMode(0);
@@ -79,12 +110,16 @@ public class Screen implements ImageProducer {
         addressMap.addStoreCallback(AddressMap.ADDRESS_LCDC, addressMap.new StoreCallback() {
             @Override
             public void onStore(int region, int relativeAddress, byte b) {
+                onVisualStore(region, relativeAddress, b);
+
                 boolean oldIsPoweredOn = isPoweredOn;
                 isPoweredOn = ((b >>> 7) & 0b1) == 1;
+                isSTATLineDirty = true;
 
                 if(!oldIsPoweredOn && isPoweredOn) {
                     // When transitioning from off to on, we don't display the next few frames.
                     frameEnableCount = 2;
+                    pixelFetcher.setRenderingSkipped(true);
 
                     // Check comparison bit now.
                     setLYCompareBit();
@@ -108,6 +143,9 @@ public class Screen implements ImageProducer {
                 int oldLowerBits = Byte.toUnsignedInt(oldValue) & 0b00000111;
                 int newUpperBits = Byte.toUnsignedInt(b) & 0b11111000;
                 super.onStore(region, relativeAddress, (byte)(newUpperBits | oldLowerBits));
+
+                // The interrupt selection bits may have changed.
+                isSTATLineDirty = true;
             }
         });
 
@@ -129,6 +167,74 @@ public class Screen implements ImageProducer {
                 }
             }
         });
+
+        addressMap.addStoreCallback(AddressMap.ADDRESS_BGP, addressMap.new StoreCallback() {
+            @Override
+            public void onStore(int region, int relativeAddress, byte b) {
+                onVisualStore(region, relativeAddress, b);
+                super.onStore(region, relativeAddress, b);
+                pixelFetcher.updateBackgroundPalette(b);
+            }
+        });
+
+        addressMap.addStoreCallback(AddressMap.ADDRESS_OBP0, addressMap.new StoreCallback() {
+            @Override
+            public void onStore(int region, int relativeAddress, byte b) {
+                onVisualStore(region, relativeAddress, b);
+                super.onStore(region, relativeAddress, b);
+                pixelFetcher.updateObjectPalette(0, b);
+            }
+        });
+
+        addressMap.addStoreCallback(AddressMap.ADDRESS_OBP1, addressMap.new StoreCallback() {
+            @Override
+            public void onStore(int region, int relativeAddress, byte b) {
+                onVisualStore(region, relativeAddress, b);
+                super.onStore(region, relativeAddress, b);
+                pixelFetcher.updateObjectPalette(1, b);
+            }
+        });
+
+        // OAM - Only the 40 object entries matter for rendering.
+        for(int address = 0xFE00; address <= 0xFE9F; address++) {
+            addressMap.addStoreCallback(address, addressMap.new StoreCallback() {
+                @Override
+                public void onStore(int region, int relativeAddress, byte b) {
+                    // Bytes that a DMA transfer has already written must land before this store, just as if they had been stored one at a time.
+                    if(dmaProcessor != null) {
+                        dmaProcessor.copyPendingBytes();
+                    }
+
+                    // The cached object index must be told before the old data is overwritten.
+                    pixelFetcher.objectPixelFIFO.onOAMStore();
+                    onVisualStore(region, relativeAddress, b);
+                    super.onStore(region, relativeAddress, b);
+                }
+            });
+        }
+
+        // Scroll and window position registers only need to be watched for changes.
+        int[] positionAddresses = new int[] {AddressMap.ADDRESS_SCY, AddressMap.ADDRESS_SCX, AddressMap.ADDRESS_WY, AddressMap.ADDRESS_WX};
+        for(int address : positionAddresses) {
+            addressMap.addStoreCallback(address, addressMap.new StoreCallback() {
+                @Override
+                public void onStore(int region, int relativeAddress, byte b) {
+                    onVisualStore(region, relativeAddress, b);
+                    super.onStore(region, relativeAddress, b);
+                }
+            });
+        }
+
+        // VRAM - Tile data and tile maps.
+        for(int address = 0x8000; address <= 0x9FFF; address++) {
+            addressMap.addStoreCallback(address, addressMap.new StoreCallback() {
+                @Override
+                public void onStore(int region, int relativeAddress, byte b) {
+                    onVisualStore(region, relativeAddress, b);
+                    super.onStore(region, relativeAddress, b);
+                }
+            });
+        }
     }
 
     public void initLoadMap() {
@@ -142,6 +248,8 @@ public class Screen implements ImageProducer {
     }
 
     public void attachClock(HybridClock hybridClock) {
+        this.hybridClock = hybridClock;
+
         // Simulate performing one "Dot" per cycle.
         hybridClock.addTickCallback(new HybridClock.TickCallback() {
             @Override
@@ -151,6 +259,29 @@ public class Screen implements ImageProducer {
         });
     }
 
+    public void attachDMAProcessor(DMAProcessor dmaProcessor) {
+        this.dmaProcessor = dmaProcessor;
+
+        dmaProcessor.setOAMListener(new DMAProcessor.OAMListener() {
+            @Override
+            public boolean isOAMInUse() {
+                // OAM is not looked at while the LCD is off or during VBlank. Line 153 is excluded so that the frame always ends with OAM up to date.
+                return isPoweredOn && (pixelFetcher.state != PixelFetcher.STATE_VBLANK || pixelFetcher.y == 153);
+            }
+
+            @Override
+            public void onOAMBlockStore(int oamOffset, byte[] source, int sourceOffset, int length) {
+                // The same as storing each byte, except that the image only changes if at least one of them is different.
+                pixelFetcher.objectPixelFIFO.onOAMStore();
+
+                byte[] oam = addressMap.data[AddressMap.REGION_OAM];
+                if(!Arrays.equals(source, sourceOffset, sourceOffset + length, oam, oamOffset, oamOffset + length)) {
+                    onVisualStateChange();
+                }
+            }
+        });
+    }
+
     public int getWidth() {
         // The width of the Game Boy screen in pixels.
         return 160;
@@ -161,15 +292,96 @@ public class Screen implements ImageProducer {
         return 144;
     }
 
+    public void setFrameSkip(int frameSkip) {
+        this.frameSkip = frameSkip;
+    }
+
+    public void setAdaptiveFrameSkip(boolean isAdaptiveFrameSkip) {
+        this.isAdaptiveFrameSkip = isAdaptiveFrameSkip;
+    }
+
+    public void onVisualStore(int region, int relativeAddress, byte b) {
+        // This must be called before the store happens. Writing the same value again does not change the image.
+        if(addressMap.data[region][relativeAddress] != b) {
+            onVisualStateChange();
+        }
+    }
+
+    public void onVisualStateChange() {
+        isVisualStateChanged = true;
+
+        if(isStaticFrame && !isDrawResumePending) {
+            if(pixelFetcher.state == PixelFetcher.STATE_DRAW) {
+                // The FIFOs for this line have not been filled, so drawing can only resume on the next line.
+                // The rest of this line keeps the previous frame's pixels.
+                isDrawResumePending = true;
+            }
+            else {
+                // Everything drawn so far this frame used the old state, so the previous frame's pixels are still correct.
+                isStaticFrame = false;
+                pixelFetcher.setRenderingSkipped(false);
+            }
+        }
+    }
+
     public void onFrameEnd() {
+        boolean isDrawn = frameEnableCount == 0 && !isFrameSkipped;
+        if(isDrawn) {
+            isFrameChanged = !isStaticFrame;
+            produceFrame(frameBuffer, isFrameChanged);
+        }
+
+        // The frame buffer only matches the current state if a whole frame was drawn without any visual changes.
+        if(isVisualStateChanged) {
+            isFrameBufferCurrent = false;
+        }
+        else if(isDrawn) {
+            isFrameBufferCurrent = true;
+        }
+        isVisualStateChanged = false;
+
         if(frameEnableCount > 0) {
             frameEnableCount--;
         }
+
+        // Decide whether the next frame will be drawn. Frames that would not be displayed anyway are never drawn.
+        isFrameSkipped = shouldSkipFrame();
+        isStaticFrame = !isFrameSkipped && frameEnableCount == 0 && isFrameBufferCurrent;
+        isDrawResumePending = false;
+        pixelFetcher.setRenderingSkipped(isFrameSkipped || frameEnableCount > 0 || isStaticFrame);
+    }
+
+    public boolean shouldSkipFrame() {
+        boolean isSkip;
+        if(framesSkipped < frameSkip) {
+            isSkip = true;
+        }
+        else if(isAdaptiveFrameSkip && hybridClock != null && hybridClock.isBehindSchedule) {
+            isSkip = framesSkipped < frameSkip + MAX_ADAPTIVE_FRAME_SKIP;
+        }
+        else {
+            isSkip = false;
+        }
+
+        framesSkipped = isSkip ? framesSkipped + 1 : 0;
+        return isSkip;
     }
 
     public void onPixel(int x, int y, int colorIndex) {
         if(frameEnableCount == 0) {
-            produceImage(x, y, colorIndex);
+            frameBuffer[(y * getWidth()) + x] = (byte)colorIndex;
+        }
+    }
+
+    public void onLineEnd(int y) {
+        if(frameEnableCount == 0 && !isFrameSkipped) {
+            produceLine(y, frameBuffer);
+        }
+
+        if(isDrawResumePending) {
+            isDrawResumePending = false;
+            isStaticFrame = false;
+            pixelFetcher.setRenderingSkipped(false);
         }
     }
 
@@ -181,7 +393,11 @@ public class Screen implements ImageProducer {
         pixelFetcher.onTick();
 
         // Check if we have triggered a STAT interrupt.
-        checkSTATInterrupt();
+        // This is still done at the end of the dot so that any changes made earlier in the same cycle are all seen together.
+        if(isSTATLineDirty) {
+            isSTATLineDirty = false;
+            checkSTATInterrupt();
+        }
     }
 
     public void checkSTATInterrupt() {
@@ -224,6 +440,8 @@ public class Screen implements ImageProducer {
     }
 
     public void setSTATMode(int mode) {
+        isSTATLineDirty = true;
+
         addressMap.storeBit(AddressMap.ADDRESS_STAT, 1, (mode & 0b10) >>> 1, true);
         addressMap.storeBit(AddressMap.ADDRESS_STAT, 0, mode & 0b01, true);
 
@@ -248,11 +466,14 @@ public class Screen implements ImageProducer {
         int LY = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_LY));
         int LYC = Byte.toUnsignedInt(addressMap.loadByte(AddressMap.ADDRESS_LYC));
         addressMap.storeBit(AddressMap.ADDRESS_STAT, 2, LYC == LY ? 1 : 0, true);
+
+        isSTATLineDirty = true;
     }
 
     public void setLine144Allowed(boolean isAllowed) {
         // Sets whether or not an OAM-STAT interrupt on line 144 is allowed due to a hardware quirk.
         isLine144InterruptAllowed = isAllowed;
+        isSTATLineDirty = true;
 
         if(!isAllowed && isLine144InterruptRequested) {
             // Remove fake interrupt flag - it already had its chance to cause a STAT interrupt.
@@ -1,12 +1,20 @@
 package gameboy.ui;
 
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
 import java.awt.Canvas;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
 import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.awt.image.VolatileImage;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JFrame;
 
@@ -15,19 +23,44 @@ import gameboy.emulator.clock.HybridClock;
 import gameboy.emulator.visual.Screen;
 
 public class Display implements ImageConsumer {
-    public final int PIXEL_WIDTH = 3;
-    public final int PIXEL_HEIGHT = 3;
+    public final static int DEFAULT_SCALE = 3;
+
+    // Each Game Boy pixel is drawn as a square of this many pixels on each side.
+    int scale;
 
     Screen screen;
     JFrame frame;
     
     Canvas canvas;
     Graphics gCanvas;
+
+    // When the graphics device supports accelerated buffers, changed lines are drawn onto an offscreen image that is then page flipped or blitted to the canvas.
+    // Otherwise, such as over remote desktop, changed lines are drawn directly onto the canvas.
+    BufferStrategy bufferStrategy;
+    VolatileImage volatileImage;
+    public boolean isPageFlipping = false;
     BufferedImage bufferedImage;
     WritableRaster raster;
     int pixels[];
 
-    int[][] imageData;
+    // Complete frames, with one colorIndex per pixel stored row by row, are handed from the emulation to the drawing thread here.
+    // Neither thread waits on the other, and only the latest complete frame is ever drawn.
+    TripleBuffer tripleBuffer;
+
+    // A copy of the frame currently on the canvas. Only lines that differ from it are converted and drawn.
+    byte[] presentedData;
+
+    // Set when the whole canvas has to be drawn again, such as after the window was covered up.
+    // This is also set from the event dispatch thread, so it is taken and cleared in one step to avoid losing a request.
+    AtomicBoolean isFullRedrawPending = new AtomicBoolean(true);
+
+    // The number of lines converted to RGB and the number of lines drawn again for the most recently presented frame.
+    // Lines are drawn again onto the offscreen image when there is one, and the whole image is then copied to the screen regardless. Otherwise they are drawn directly onto the canvas.
+    public volatile int linesConverted = 0;
+    public volatile int linesRedrawn = 0;
+
+    // The time from when a frame is ready until it is on the screen.
+    public LatencyHistogram presentLatencyHistogram = new LatencyHistogram(100);
 
     // Store all possible colors of a Game Boy pixel.
     // Each value is 0xRRGGBB.
@@ -43,8 +76,13 @@ public class Display implements ImageConsumer {
     };
 
     public Display(Screen screen, JFrame frame) {
+        this(screen, frame, DEFAULT_SCALE);
+    }
+
+    public Display(Screen screen, JFrame frame, int scale) {
         this.screen = screen;
         this.frame = frame;
+        this.scale = scale;
 
         this.canvas = new Canvas() {
             @Override
@@ -52,6 +90,12 @@ public class Display implements ImageConsumer {
                 // This is only called once, so no need to cache.
                 return new Dimension(getScaledWidth(), getScaledHeight());
             }
+
+            @Override
+            public void paint(Graphics g) {
+                // Only the next frame can be drawn, so just make sure it includes the whole canvas.
+                isFullRedrawPending.set(true);
+            }
         };
 
         // The canvas needs the listeners or else it will block the frame from firing them.
@@ -64,62 +108,194 @@ public class Display implements ImageConsumer {
         frame.setVisible(true);
 
         gCanvas = canvas.getGraphics();
+        bufferStrategy = createBufferStrategy();
+        if(bufferStrategy != null) {
+            volatileImage = canvas.createVolatileImage(getScaledWidth(), getScaledHeight());
+        }
 
-        bufferedImage = new BufferedImage(getScaledWidth(), getScaledHeight(), BufferedImage.TYPE_INT_RGB);
+        // The image is kept at the Game Boy's resolution and only scaled when it is drawn.
+        bufferedImage = new BufferedImage(screen.getWidth(), screen.getHeight(), BufferedImage.TYPE_INT_RGB);
         DataBufferInt dataBuffer = ((DataBufferInt)bufferedImage.getRaster().getDataBuffer());
         pixels = dataBuffer.getData();
 
         WritableRaster.createWritableRaster(bufferedImage.getSampleModel(), dataBuffer, null);
         
-        imageData = new int[screen.getHeight()][screen.getWidth()];
+        tripleBuffer = new TripleBuffer(screen.getWidth() * screen.getHeight());
+
+        // The presented frame starts out all white.
+        presentedData = new byte[screen.getWidth() * screen.getHeight()];
+        Arrays.fill(pixels, colors[0]);
 
         addToImageProducer(screen);
     }
 
     public void attachClock(HybridClock hybridClock) {
-        hybridClock.addFrameCallback(new HybridClock.FrameCallback() {
+        hybridClock.addAsynchronousFrameCallback(new HybridClock.FrameCallback() {
             @Override
             public void onFrame() {
-                // Copy the screen data now before it can be altered.
-                // The copy will be an int[] and have scaling applied so it can be drawn directly.
-                int W = getScaledWidth();
-                int M = W * getScaledHeight();
+                // Skipped frames, unchanged frames, and a powered off LCD leave the image unchanged, so there is nothing to do.
+                boolean isNewFrame = tripleBuffer.acquire();
+                if(!isNewFrame && !isFullRedrawPending.get()) {
+                    return;
+                }
 
-                for(int i = 0; i < M; i++) {
-                    int xc = i % W;
-                    int yc = i / W;
+                presentFrame(tripleBuffer.getFrontBuffer());
 
-                    pixels[i] = colors[imageData[yc / PIXEL_WIDTH][xc / PIXEL_WIDTH]];
+                if(isNewFrame) {
+                    presentLatencyHistogram.record(System.nanoTime() - tripleBuffer.getFrontPublishTime());
                 }
             }
         });
+    }
 
-        hybridClock.addAsynchronousFrameCallback(new HybridClock.FrameCallback() {
-            @Override
-            public void onFrame() {
-                gCanvas.drawImage(bufferedImage, 0, 0, null);
+    public BufferStrategy createBufferStrategy() {
+        // Prefer page flipping, then accelerated blitting. If neither is available, return null.
+        ImageCapabilities acceleratedCapabilities = new ImageCapabilities(true);
+        try {
+            canvas.createBufferStrategy(2, new BufferCapabilities(acceleratedCapabilities, acceleratedCapabilities, BufferCapabilities.FlipContents.UNDEFINED));
+            isPageFlipping = true;
+        }
+        catch(AWTException e) {
+            try {
+                canvas.createBufferStrategy(2, new BufferCapabilities(acceleratedCapabilities, acceleratedCapabilities, null));
             }
-        });
+            catch(AWTException e2) {
+                return null;
+            }
+        }
+        return canvas.getBufferStrategy();
+    }
+
+    public void presentFrame(byte[] frameData) {
+        if(bufferStrategy == null) {
+            drawChangedLines(frameData, gCanvas);
+
+            // Make sure the drawing is actually sent to the screen now rather than whenever the system gets to it.
+            Toolkit.getDefaultToolkit().sync();
+            return;
+        }
+
+        // The offscreen image can lose its contents, such as after a display mode change, in which case it must be drawn again in full.
+        int status = volatileImage.validate(canvas.getGraphicsConfiguration());
+        if(status == VolatileImage.IMAGE_INCOMPATIBLE) {
+            volatileImage = canvas.createVolatileImage(getScaledWidth(), getScaledHeight());
+            isFullRedrawPending.set(true);
+        }
+        else if(status == VolatileImage.IMAGE_RESTORED) {
+            isFullRedrawPending.set(true);
+        }
+
+        Graphics gVolatile = volatileImage.getGraphics();
+        drawChangedLines(frameData, gVolatile);
+        gVolatile.dispose();
+
+        if(volatileImage.contentsLost()) {
+            isFullRedrawPending.set(true);
+        }
+
+        // The back buffer's contents are undefined after each flip, so the entire offscreen image is copied to it every time.
+        do {
+            do {
+                Graphics gBuffer = bufferStrategy.getDrawGraphics();
+                gBuffer.drawImage(volatileImage, 0, 0, null);
+                gBuffer.dispose();
+            } while(bufferStrategy.contentsRestored());
+
+            bufferStrategy.show();
+        } while(bufferStrategy.contentsLost());
+
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    public void drawChangedLines(byte[] frameData, Graphics g) {
+        boolean isFullRedraw = isFullRedrawPending.getAndSet(false);
+
+        int width = screen.getWidth();
+        int height = screen.getHeight();
+        int numLinesConverted = 0;
+        int numLinesRedrawn = 0;
+
+        // Consecutive lines that need to be drawn are drawn together as one band.
+        int bandStart = -1;
+        for(int y = 0; y <= height; y++) {
+            boolean isLineDrawn = false;
+
+            if(y < height) {
+                int start = y * width;
+                int end = start + width;
+
+                if(!Arrays.equals(frameData, start, end, presentedData, start, end)) {
+                    System.arraycopy(frameData, start, presentedData, start, width);
+                    for(int i = start; i < end; i++) {
+                        pixels[i] = colors[frameData[i]];
+                    }
+
+                    numLinesConverted++;
+                    isLineDrawn = true;
+                }
+                else {
+                    isLineDrawn = isFullRedraw;
+                }
+            }
+
+            if(isLineDrawn) {
+                if(bandStart == -1) {
+                    bandStart = y;
+                }
+            }
+            else if(bandStart != -1) {
+                drawBand(g, bandStart, y);
+                numLinesRedrawn += y - bandStart;
+                bandStart = -1;
+            }
+        }
+
+        linesConverted = numLinesConverted;
+        linesRedrawn = numLinesRedrawn;
+    }
+
+    public void drawBand(Graphics g, int startY, int endY) {
+        // Draw the lines in [startY, endY). Java2D scales the image with nearest neighbor interpolation by default.
+        int width = screen.getWidth();
+        g.drawImage(bufferedImage, 0, startY * scale, width * scale, endY * scale, 0, startY, width, endY, null);
     }
 
     public int getScaledWidth() {
         // Match the Game Boy screen but scale it.
-        return screen.getWidth() * PIXEL_WIDTH;
+        return screen.getWidth() * scale;
     }
 
     public int getScaledHeight() {
         // Match the Game Boy screen but scale it.
-        return screen.getHeight() * PIXEL_HEIGHT;
+        return screen.getHeight() * scale;
     }
 
     // ImageConsumer
     @Override
-    public void consumeImage(int x, int y, int colorIndex) {
-        imageData[y][x] = colorIndex;
+    public void consumeLine(int y, byte[] frameBuffer) {
+        // Only whole frames are displayed.
+    }
+
+    @Override
+    public void consumeFrame(byte[] frameBuffer, boolean isChanged) {
+        // Take a copy so that the next frame can start being drawn into the frame buffer.
+        // An unchanged frame is identical to the last one that was published.
+        if(isChanged) {
+            byte[] backBuffer = tripleBuffer.getBackBuffer();
+            System.arraycopy(frameBuffer, 0, backBuffer, 0, backBuffer.length);
+            tripleBuffer.publish();
+        }
     }
 
     @Override
     public void consumeDebugImage(int[][] imageData) {
-        this.imageData = imageData;
+        byte[] backBuffer = tripleBuffer.getBackBuffer();
+        int width = screen.getWidth();
+        for(int y = 0; y < imageData.length; y++) {
+            for(int x = 0; x < width; x++) {
+                backBuffer[(y * width) + x] = (byte)imageData[y][x];
+            }
+        }
+        tripleBuffer.publish();
     }
 }
\ No newline at end of file
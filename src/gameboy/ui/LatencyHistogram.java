@@ -0,0 +1,42 @@
+package gameboy.ui;
+
+// Counts latencies in 1 millisecond buckets. Anything past the last bucket is counted in the last bucket.
+public class LatencyHistogram {
+    public long[] counts;
+    public long totalCount = 0;
+
+    public LatencyHistogram(int numBuckets) {
+        counts = new long[numBuckets];
+    }
+
+    public void record(long latencyNanos) {
+        int bucket = (int)Math.max(0, Math.min(latencyNanos / 1000000L, counts.length - 1));
+        counts[bucket]++;
+        totalCount++;
+    }
+
+    public int getPercentile(double fraction) {
+        // Returns the smallest latency in milliseconds that at least this fraction of the recorded latencies are within.
+        long targetCount = (long)Math.ceil(fraction * totalCount);
+        long count = 0;
+        for(int bucket = 0; bucket < counts.length; bucket++) {
+            count += counts[bucket];
+            if(count >= targetCount) {
+                return bucket;
+            }
+        }
+        return counts.length - 1;
+    }
+
+    public void reset() {
+        for(int bucket = 0; bucket < counts.length; bucket++) {
+            counts[bucket] = 0;
+        }
+        totalCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "p50 = " + getPercentile(0.5) + " ms, p95 = " + getPercentile(0.95) + " ms, p99 = " + getPercentile(0.99) + " ms (" + totalCount + " samples)";
+    }
+}
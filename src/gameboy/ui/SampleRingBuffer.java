@@ -0,0 +1,60 @@
+package gameboy.ui;
+
+// A lock-free ring buffer that passes sound samples from one producer thread to one consumer thread.
+// Each frame holds a 16-bit left channel sample and then a 16-bit right channel sample.
+public class SampleRingBuffer {
+    short[] samples;
+    int capacity;
+    int mask;
+
+    // The total number of frames ever written and read. Only the producer changes writeCount and only the consumer changes readCount.
+    volatile long writeCount = 0;
+    volatile long readCount = 0;
+
+    public SampleRingBuffer(int minCapacity) {
+        // The capacity is a power of 2 so that positions can be wrapped with a mask.
+        capacity = Integer.highestOneBit(Math.max(minCapacity - 1, 1)) << 1;
+        samples = new short[capacity * 2];
+        mask = capacity - 1;
+    }
+
+    public int size() {
+        return (int)(writeCount - readCount);
+    }
+
+    // Producer only
+    public int offer(short[] block, int frames) {
+        // Copies as many of the interleaved frames as will fit. Returns the number of frames copied, and any others are dropped.
+        long currentWriteCount = writeCount;
+        int numFrames = (int)Math.min(frames, capacity - (currentWriteCount - readCount));
+
+        // The frames may wrap around the end of the array.
+        int start = (int)(currentWriteCount & mask);
+        int firstFrames = Math.min(numFrames, capacity - start);
+        System.arraycopy(block, 0, samples, start * 2, firstFrames * 2);
+        System.arraycopy(block, firstFrames * 2, samples, 0, (numFrames - firstFrames) * 2);
+
+        writeCount = currentWriteCount + numFrames;
+        return numFrames;
+    }
+
+    // Consumer only
+    public int drainTo(byte[] bytes) {
+        // Moves as many frames as will fit into the array, 2 little-endian bytes per sample. Returns the number of bytes filled.
+        long currentReadCount = readCount;
+        int numFrames = (int)Math.min(writeCount - currentReadCount, bytes.length / 4);
+
+        for(int i = 0; i < numFrames; i++) {
+            int index = (int)((currentReadCount + i) & mask) * 2;
+            short left = samples[index];
+            short right = samples[index + 1];
+            bytes[i * 4] = (byte)(left & 0xFF);
+            bytes[i * 4 + 1] = (byte)((left >> 8) & 0xFF);
+            bytes[i * 4 + 2] = (byte)(right & 0xFF);
+            bytes[i * 4 + 3] = (byte)((right >> 8) & 0xFF);
+        }
+
+        readCount = currentReadCount + numFrames;
+        return numFrames * 4;
+    }
+}
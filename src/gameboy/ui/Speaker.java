@@ -1,5 +1,7 @@
 package gameboy.ui;
 
+import java.util.concurrent.locks.LockSupport;
+
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
@@ -11,20 +13,39 @@ import gameboy.emulator.clock.HybridClock;
 import gameboy.emulator.clock.TimingInfo;
 
 public class Speaker implements SoundConsumer {
+    // The line can hold this many frames of sound, and we try to keep this many frames queued up in it.
+    public final static int LINE_BUFFER_FRAMES = 8;
+    public final static int TARGET_LATENCY_FRAMES = 3;
+
+    // Dynamic rate control: The mixer's output sample rate is adjusted by up to this fraction to keep the queued sound near the target.
+    // This absorbs the small difference between the system clock and the sound card's clock.
+    public final static double MAX_RATE_ADJUSTMENT = 0.005;
+
+    // How long the writer thread sleeps when there is no sound to write.
+    public final static long WRITER_IDLE_TIME = 1000000L;
+
     Mixer mixer;
+    HybridClock hybridClock;
     
     int samplesPerSecond;
     int samplesPerFrame;
-    double downsampleRatio;
+    int targetQueuedSamples;
 
-    SourceDataLine line;
+    // Samples go from the emulation thread to a dedicated writer thread, which is the only thread that can block on the line.
+    SampleRingBuffer ringBuffer;
+    Thread writerThread;
 
-    double sampleCount = 0;
+    // The number of samples that have been written to the line.
+    volatile long writtenSampleCount = 0;
 
-    int bufferIndex = 0;
-    int copyIndex;
-    byte[] buffer;
-    byte[] copyBuffer;
+    // Overruns are samples dropped because the ring buffer was full. Underruns are the times the line ran out of sound to play.
+    public volatile long overrunCount = 0;
+    public volatile long underrunCount = 0;
+
+    // Lets the clock pace emulation by how much sound is queued up instead of by the system clock.
+    public HybridClock.PacingSource pacingSource;
+
+    SourceDataLine line;
 
     public Speaker(Mixer mixer, TimingInfo timingInfo, int samplesPerSecond) {
         this.mixer = mixer;
@@ -32,12 +53,13 @@ public class Speaker implements SoundConsumer {
 
         this.samplesPerFrame = (int)Math.ceil((double)samplesPerSecond / timingInfo.framesPerSecond);
 
-        // Downsample based on the APU frequency and the desired output byte rate.
+        // The mixer synthesizes samples directly at our sample rate.
         long apuFrequency = timingInfo.frequency / 4;
-        this.downsampleRatio = (double)apuFrequency / (double)samplesPerSecond;
+        mixer.setOutputSampleRate(apuFrequency, samplesPerSecond);
 
-        buffer = new byte[samplesPerFrame * 4];
-        copyBuffer = new byte[samplesPerFrame * 4];
+        this.targetQueuedSamples = samplesPerFrame * TARGET_LATENCY_FRAMES;
+
+        this.ringBuffer = new SampleRingBuffer(samplesPerFrame * LINE_BUFFER_FRAMES);
 
         this.line = createLine();
 
@@ -45,22 +67,66 @@ public class Speaker implements SoundConsumer {
     }
 
     public void attachClock(HybridClock hybridClock) {
-        hybridClock.addFrameCallback(new HybridClock.FrameCallback() {
+        this.hybridClock = hybridClock;
+
+        pacingSource = new HybridClock.PacingSource() {
             @Override
-            public void onFrame() {
-                // Copy the sound data now before it can be altered.
-                System.arraycopy(buffer, 0, copyBuffer, 0, bufferIndex);
-                copyIndex = bufferIndex;
-                bufferIndex = 0;
+            public long getDelay() {
+                // Only run the next frame once the queued sound has played down to the target.
+                long excessSamples = getQueuedSampleCount() - targetQueuedSamples;
+                return excessSamples * 1000000000L / samplesPerSecond;
             }
-        });
+        };
 
-        hybridClock.addAsynchronousFrameCallback(new HybridClock.FrameCallback() {
+        writerThread = new Thread(new Runnable() {
             @Override
-            public void onFrame() {
-                line.write(copyBuffer, 0, copyIndex);
+            public void run() {
+                byte[] writeBuffer = new byte[samplesPerFrame * 4];
+                boolean isUnderrun = false;
+
+                while(!Thread.currentThread().isInterrupted()) {
+                    updateSampleRateAdjustment();
+
+                    int numBytes = ringBuffer.drainTo(writeBuffer);
+                    if(numBytes == 0) {
+                        // Count each time the line runs dry while it should be playing.
+                        if(!isUnderrun && hybridClock.isRealTime() && writtenSampleCount > 0 && getQueuedSampleCount() == 0) {
+                            isUnderrun = true;
+                            underrunCount++;
+                        }
+
+                        LockSupport.parkNanos(WRITER_IDLE_TIME);
+                        continue;
+                    }
+                    isUnderrun = false;
+
+                    // Sound is muted when not running in real time, since there would be either too much or too little of it to play.
+                    if(hybridClock.isRealTime()) {
+                        line.write(writeBuffer, 0, numBytes);
+                        writtenSampleCount += numBytes / 4;
+                    }
+                }
             }
         });
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public void stop() {
+        writerThread.interrupt();
+        line.close();
+    }
+
+    public long getQueuedSampleCount() {
+        // The frame position is the number of samples the line has actually played.
+        return Math.max(0, writtenSampleCount + ringBuffer.size() - line.getLongFramePosition());
+    }
+
+    public void updateSampleRateAdjustment() {
+        // Use slightly fewer samples when too much sound is queued, and slightly more when too little is.
+        double error = (double)(getQueuedSampleCount() - targetQueuedSamples) / (double)targetQueuedSamples;
+        error = Math.max(-1.0, Math.min(error, 1.0));
+        mixer.setSampleRateAdjustment(1 - (MAX_RATE_ADJUSTMENT * error));
     }
 
     public SourceDataLine createLine() {
@@ -69,7 +135,7 @@ public class Speaker implements SoundConsumer {
             AudioFormat format = new AudioFormat(samplesPerSecond, 16, 2, true, false);
             DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
             line = (SourceDataLine)AudioSystem.getLine(info);
-            line.open(format);
+            line.open(format, LINE_BUFFER_FRAMES * samplesPerFrame * 4);
             line.start();    
             return line;
         }
@@ -80,21 +146,9 @@ public class Speaker implements SoundConsumer {
 
     // SoundConsumer
     @Override
-    public void consumeSound(int data) {
-        // Each int has 4 bytes: 2 for left channel sound and 2 for right channel sound.
-
-        // These quantities must be doubles to avoid integer rounding errors in the downsampling.
-        sampleCount++;
-        if(sampleCount >= downsampleRatio) {
-            sampleCount -= downsampleRatio;
-
-            // Interleave left and right channel data into the array.
-            if(bufferIndex < samplesPerFrame * 4) {
-                buffer[bufferIndex++] = (byte)(data & 0xFF);
-                buffer[bufferIndex++] = (byte)((data >> 8) & 0xFF);
-                buffer[bufferIndex++] = (byte)((data >> 16) & 0xFF);
-                buffer[bufferIndex++] = (byte)((data >> 24) & 0xFF);
-            }
-        }
+    public void consumeSamples(short[] samples, int frames, int sampleRate) {
+        // The mixer was set up to produce samples at our sample rate, so they can be queued up as they are.
+        int numFrames = ringBuffer.offer(samples, frames);
+        overrunCount += frames - numFrames;
     }
-}
\ No newline at end of file
+}
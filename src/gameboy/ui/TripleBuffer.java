@@ -0,0 +1,53 @@
+package gameboy.ui;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Passes complete frames from one producer thread to one consumer thread without either thread ever waiting on the other.
+// The producer always owns a back buffer and the consumer always owns a front buffer. The third "middle" buffer is swapped between them.
+public class TripleBuffer {
+    // The exchange holds the index of the middle buffer, plus this bit if the middle buffer holds a frame the consumer has not seen yet.
+    public final static int FRESH_BIT = 0b100;
+
+    public byte[][] buffers;
+
+    // The time that each buffer's frame was published, from System.nanoTime().
+    public long[] publishTimes = new long[3];
+
+    AtomicInteger exchange = new AtomicInteger(1);
+    int backIndex = 0;
+    int frontIndex = 2;
+
+    public TripleBuffer(int size) {
+        buffers = new byte[3][size];
+    }
+
+    // Producer only
+    public byte[] getBackBuffer() {
+        return buffers[backIndex];
+    }
+
+    public void publish() {
+        // The finished back buffer becomes the middle buffer, and any frame the consumer skipped over is reused as the next back buffer.
+        publishTimes[backIndex] = System.nanoTime();
+        backIndex = exchange.getAndSet(backIndex | FRESH_BIT) & ~FRESH_BIT;
+    }
+
+    // Consumer only
+    public byte[] getFrontBuffer() {
+        return buffers[frontIndex];
+    }
+
+    public long getFrontPublishTime() {
+        return publishTimes[frontIndex];
+    }
+
+    public boolean acquire() {
+        // Returns whether there was a new frame, in which case it is now the front buffer.
+        if((exchange.get() & FRESH_BIT) == 0) {
+            return false;
+        }
+
+        frontIndex = exchange.getAndSet(frontIndex) & ~FRESH_BIT;
+        return true;
+    }
+}